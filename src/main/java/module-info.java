@@ -12,11 +12,13 @@ module no.ssb.blueprint {
     requires io.helidon.openapi;
     requires io.helidon.webserver.accesslog;
     requires io.helidon.webserver.cors;
+    requires microprofile.metrics.api;
 
     requires org.slf4j;
     requires jul.to.slf4j;
     requires logback.classic;
 
+    requires com.fasterxml.jackson.core;
     requires com.fasterxml.jackson.databind;
     requires com.fasterxml.jackson.module.paramnames;
     requires com.fasterxml.jackson.datatype.jdk8;
@@ -36,6 +38,9 @@ module no.ssb.blueprint {
     opens no.ssb.dapla.blueprint.rest.json to com.fasterxml.jackson.databind;
 
     exports no.ssb.dapla.blueprint;
+    exports no.ssb.dapla.blueprint.cache;
+    exports no.ssb.dapla.blueprint.lineage;
     exports no.ssb.dapla.blueprint.neo4j;
     exports no.ssb.dapla.blueprint.neo4j.model;
+    exports no.ssb.dapla.blueprint.neo4j.projection;
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import io.helidon.health.HealthSupport;
 import io.helidon.health.checks.HealthChecks;
 import io.helidon.media.jackson.JacksonSupport;
 import io.helidon.metrics.MetricsSupport;
+import io.helidon.metrics.RegistryFactory;
 import io.helidon.openapi.OpenAPISupport;
 import io.helidon.webserver.Routing;
 import io.helidon.webserver.StaticContentSupport;
@@ -14,12 +15,16 @@ import io.helidon.webserver.WebServer;
 import io.helidon.webserver.WebTracingConfig;
 import io.helidon.webserver.accesslog.AccessLogSupport;
 import io.helidon.webserver.cors.CorsSupport;
+import no.ssb.dapla.blueprint.lineage.LineageSnapshots;
+import no.ssb.dapla.blueprint.neo4j.CommitCache;
 import no.ssb.dapla.blueprint.neo4j.GitStore;
 import no.ssb.dapla.blueprint.neo4j.NotebookStore;
 import no.ssb.dapla.blueprint.neo4j.model.Commit;
+import no.ssb.dapla.blueprint.parser.ParseResultCache;
 import no.ssb.dapla.blueprint.rest.BlueprintService;
 import no.ssb.dapla.blueprint.rest.GithubHookService;
 import no.ssb.dapla.blueprint.rest.GithubHookVerifier;
+import org.eclipse.microprofile.metrics.MetricRegistry;
 import org.neo4j.ogm.config.Configuration;
 import org.neo4j.ogm.session.SessionFactory;
 import org.slf4j.Logger;
@@ -28,6 +33,7 @@ import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -65,13 +71,32 @@ public class BlueprintApplication {
         MetricsSupport metrics = MetricsSupport.create();
 
         this.notebookStore = new NotebookStore(driver);
+        notebookStore.createSchema();
         gitStore = new GitStore(config);
 
-        BlueprintService blueprintService = new BlueprintService(notebookStore, gitStore);
+        ParseResultCache parseCache = new ParseResultCache(
+                config.get("parser.cache.size").asInt().orElse(10_000),
+                config.get("parser.cache.persistent").asBoolean().orElse(false)
+                        ? Path.of(config.get("github.path").asString().get(), "parse-cache")
+                        : null,
+                RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION)
+        );
+
+        LineageSnapshots snapshots = config.get("lineage.snapshots").asBoolean().orElse(false)
+                ? new LineageSnapshots(Path.of(config.get("github.path").asString().get(), "lineage"))
+                : null;
+
+        CommitCache commitCache = new CommitCache(notebookStore, snapshots,
+                config.get("neo4j.cache.max-weight").asLong().orElse(100_000L),
+                config.get("neo4j.cache.max-index-bytes").asLong().orElse(CommitCache.DEFAULT_MAX_INDEX_BYTES));
+        BlueprintService blueprintService = new BlueprintService(notebookStore, gitStore, commitCache);
         GithubHookService githubHookService = new GithubHookService(
                 notebookStore,
                 gitStore,
-                new GithubHookVerifier(config)
+                new GithubHookVerifier(config),
+                config.get("parser.parallelism").asInt().orElse(1),
+                parseCache,
+                snapshots
         );
 
         var rapidoc = StaticContentSupport.builder("/rapidoc")
@@ -108,7 +133,9 @@ public class BlueprintApplication {
                 throw new RuntimeException(e);
             }
         }).ifPresent(server::bindAddress);
-        put(WebServer.class, server.build());
+        WebServer webServer = server.build();
+        webServer.whenShutdown().thenRun(githubHookService::shutdown);
+        put(WebServer.class, webServer);
     }
 
     /**
@@ -0,0 +1,193 @@
+package no.ssb.dapla.blueprint.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache of resources that must be closed, bounded by size and idle time.
+ * <p>
+ * Values are handed out as {@link Lease}s. The cache and every open lease hold a reference to the value, and the
+ * value is closed when the last reference is released: a value evicted while leased stays open until its leases
+ * are closed. The least recently used values are evicted once there are more than maxSize, and values that have
+ * not been leased for maxIdle are evicted on the next acquire or release.
+ */
+public class ClosingCache<K, V extends AutoCloseable> {
+
+    private static final Logger log = LoggerFactory.getLogger(ClosingCache.class);
+
+    private final int maxSize;
+    private final long maxIdle;
+    private final LongSupplier ticker;
+
+    // Access ordered, guarded by this.
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public ClosingCache(int maxSize, Duration maxIdle) {
+        this(maxSize, maxIdle, System::nanoTime);
+    }
+
+    /**
+     * @param ticker the current time in nanoseconds.
+     */
+    ClosingCache(int maxSize, Duration maxIdle, LongSupplier ticker) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize cannot be negative");
+        }
+        if (maxIdle.isNegative()) {
+            throw new IllegalArgumentException("maxIdle cannot be negative");
+        }
+        this.maxSize = maxSize;
+        this.maxIdle = maxIdle.toNanos();
+        this.ticker = Objects.requireNonNull(ticker);
+    }
+
+    private static void closeAll(List<? extends AutoCloseable> values) {
+        for (AutoCloseable value : values) {
+            try {
+                value.close();
+            } catch (Exception e) {
+                log.warn("could not close {}", value, e);
+            }
+        }
+    }
+
+    /**
+     * Lease the value of the key, loading it with the loader if it is not cached.
+     * <p>
+     * Concurrent misses can load the value more than once; the values that are not kept are closed.
+     */
+    public Lease<V> acquire(K key, Loader<? super K, ? extends V> loader) throws IOException {
+        List<V> closed = new ArrayList<>();
+        Lease<V> lease;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            lease = entry == null ? null : lease(entry, closed);
+        }
+        if (lease == null) {
+            V loaded = Objects.requireNonNull(loader.load(key));
+            synchronized (this) {
+                Entry<V> entry = entries.get(key);
+                if (entry == null) {
+                    entry = new Entry<>(loaded);
+                    entries.put(key, entry);
+                } else {
+                    closed.add(loaded);
+                }
+                lease = lease(entry, closed);
+            }
+        }
+        closeAll(closed);
+        return lease;
+    }
+
+    // Guarded by this.
+    private Lease<V> lease(Entry<V> entry, List<V> closed) {
+        entry.references++;
+        entry.lastUsed = ticker.getAsLong();
+        evict(closed);
+        return new Lease<>(this, entry);
+    }
+
+    private void release(Entry<V> entry) {
+        List<V> closed = new ArrayList<>();
+        synchronized (this) {
+            entry.lastUsed = ticker.getAsLong();
+            entry.release(closed);
+            evict(closed);
+        }
+        closeAll(closed);
+    }
+
+    // Guarded by this.
+    private void evict(List<V> closed) {
+        long now = ticker.getAsLong();
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+            boolean idle = entry.references == 1 && now - entry.lastUsed >= maxIdle;
+            if (idle || entries.size() > maxSize) {
+                iterator.remove();
+                entry.release(closed);
+            }
+        }
+    }
+
+    /**
+     * Evict all the values. Leased values are closed when their leases are.
+     */
+    public void invalidateAll() {
+        List<V> closed = new ArrayList<>();
+        synchronized (this) {
+            for (Entry<V> entry : entries.values()) {
+                entry.release(closed);
+            }
+            entries.clear();
+        }
+        closeAll(closed);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws IOException;
+    }
+
+    /**
+     * A reference to a cached value. The value stays open until the lease is closed.
+     */
+    public static final class Lease<V extends AutoCloseable> implements AutoCloseable {
+
+        private final ClosingCache<?, V> cache;
+        private final Entry<V> entry;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(ClosingCache<?, V> cache, Entry<V> entry) {
+            this.cache = cache;
+            this.entry = entry;
+        }
+
+        public V get() {
+            if (closed.get()) {
+                throw new IllegalStateException("the lease is closed");
+            }
+            return entry.value;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                cache.release(entry);
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        // The reference of the cache and one per open lease.
+        private int references = 1;
+        private long lastUsed;
+
+        private Entry(V value) {
+            this.value = value;
+        }
+
+        private void release(List<V> closed) {
+            if (--references == 0) {
+                closed.add(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package no.ssb.dapla.blueprint.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A read-through cache bounded by the total weight of its values.
+ * <p>
+ * The least recently used values are evicted once the weight exceeds the maximum. Concurrent misses for the same
+ * key share a single load. Empty results are returned but not cached.
+ */
+public class WeightedCache<K, V> {
+
+    private final long maxWeight;
+    private final ToLongFunction<? super V> weigher;
+
+    // Access ordered, guarded by this.
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, CompletableFuture<Optional<V>>> loading = new ConcurrentHashMap<>();
+    private long weight;
+
+    public WeightedCache(long maxWeight, ToLongFunction<? super V> weigher) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight cannot be negative");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = Objects.requireNonNull(weigher);
+    }
+
+    private static RuntimeException unwrap(CompletionException ce) {
+        if (ce.getCause() instanceof RuntimeException) {
+            return (RuntimeException) ce.getCause();
+        }
+        if (ce.getCause() instanceof Error) {
+            throw (Error) ce.getCause();
+        }
+        return ce;
+    }
+
+    /**
+     * Return the value of the key, loading it with the loader if it is not cached.
+     */
+    public Optional<V> get(K key, Function<? super K, Optional<V>> loader) {
+        Optional<V> cached = getIfPresent(key);
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        CompletableFuture<Optional<V>> future = new CompletableFuture<>();
+        CompletableFuture<Optional<V>> pending = loading.putIfAbsent(key, future);
+        if (pending != null) {
+            try {
+                return pending.join();
+            } catch (CompletionException ce) {
+                throw unwrap(ce);
+            }
+        }
+
+        try {
+            // The value might have been loaded since the first lookup.
+            Optional<V> value = getIfPresent(key);
+            if (value.isEmpty()) {
+                value = Objects.requireNonNull(loader.apply(key));
+                value.ifPresent(v -> put(key, v));
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    public synchronized Optional<V> getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry == null ? Optional.empty() : Optional.of(entry.value);
+    }
+
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        Entry<V> previous = entries.remove(key);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        entries.put(key, new Entry<>(value, valueWeight));
+        weight += valueWeight;
+
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (weight > maxWeight) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized long size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+
+        private Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An execution order of the notebooks of a {@link LineageGraph}.
+ * <p>
+ * Notebooks are grouped in levels: a notebook is in the level after the deepest of the notebooks it consumes
+ * from, so the notebooks of a level do not depend on each other and can run concurrently once the previous levels
+ * are done. The critical path is the longest chain of notebooks, and bounds the number of sequential steps.
+ * <p>
+ * A notebook that consumes its own output is not a cycle. If planned notebooks depend on each other there is no
+ * order; the plan then only lists the cycles. Levels and notebooks are in path order.
+ */
+public final class ExecutionPlan {
+
+    private final LineageGraph graph;
+    private final List<int[]> levels;
+    private final int[] criticalPath;
+    private final List<int[]> cycles;
+
+    private ExecutionPlan(LineageGraph graph, List<int[]> levels, int[] criticalPath, List<int[]> cycles) {
+        this.graph = graph;
+        this.levels = levels;
+        this.criticalPath = criticalPath;
+        this.cycles = cycles;
+    }
+
+    public static ExecutionPlan create(LineageGraph graph) {
+        return create(graph, graph.all());
+    }
+
+    /**
+     * Create the plan of some of the notebooks of the graph. The order follows the dependencies through the
+     * whole graph: a notebook that depends on another through notebooks that are not planned still comes after
+     * it.
+     */
+    public static ExecutionPlan create(LineageGraph graph, BitSet notebooks) {
+        var components = StronglyConnectedComponents.find(graph);
+        int size = graph.size();
+
+        List<int[]> cycles = new ArrayList<>();
+        for (int component = 0; component < components.count(); component++) {
+            int[] members = components.getMembers(component);
+            if (members.length > 1 && Arrays.stream(members).anyMatch(notebooks::get)) {
+                cycles.add(members);
+            }
+        }
+        if (!cycles.isEmpty()) {
+            cycles.sort((a, b) -> Integer.compare(a[0], b[0]));
+            return new ExecutionPlan(graph, List.of(), new int[0], cycles);
+        }
+
+        // The highest component comes first. For each component, the number of levels before it and the last
+        // planned notebook of the longest chain leading to it.
+        int[] before = new int[components.count()];
+        int[] last = new int[components.count()];
+        Arrays.fill(last, -1);
+        int[] levelOf = new int[size];
+        int[] previous = new int[size];
+        int depth = 0;
+        int end = -1;
+        for (int component = components.count() - 1; component >= 0; component--) {
+            int[] members = components.getMembers(component);
+            int levels = before[component];
+            int chain = last[component];
+            if (notebooks.get(members[0])) {
+                // Planned notebooks are not in cycles.
+                int notebook = members[0];
+                levelOf[notebook] = levels;
+                previous[notebook] = chain;
+                levels++;
+                chain = notebook;
+                if (levels > depth) {
+                    depth = levels;
+                    end = notebook;
+                }
+            }
+            for (int member : members) {
+                for (int next : components.getSuccessors(member)) {
+                    int nextComponent = components.getComponent(next);
+                    if (nextComponent != component && levels > before[nextComponent]) {
+                        before[nextComponent] = levels;
+                        last[nextComponent] = chain;
+                    }
+                }
+            }
+        }
+
+        int[] levelSizes = new int[depth];
+        notebooks.stream().forEach(notebook -> levelSizes[levelOf[notebook]]++);
+        List<int[]> levels = new ArrayList<>(depth);
+        for (int level = 0; level < depth; level++) {
+            levels.add(new int[levelSizes[level]]);
+        }
+        Arrays.fill(levelSizes, 0);
+        notebooks.stream().forEach(notebook -> {
+            int level = levelOf[notebook];
+            levels.get(level)[levelSizes[level]++] = notebook;
+        });
+
+        int[] criticalPath = new int[depth];
+        for (int index = depth - 1, notebook = end; index >= 0; index--, notebook = previous[notebook]) {
+            criticalPath[index] = notebook;
+        }
+        return new ExecutionPlan(graph, levels, criticalPath, List.of());
+    }
+
+    public LineageGraph getGraph() {
+        return graph;
+    }
+
+    public boolean hasCycles() {
+        return !cycles.isEmpty();
+    }
+
+    /**
+     * Return the groups of notebooks that depend on each other, empty if the plan has no cycles.
+     */
+    public List<int[]> getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Return the notebooks of each level, empty if the plan has cycles.
+     */
+    public List<int[]> getLevels() {
+        return levels;
+    }
+
+    /**
+     * Return the number of levels.
+     */
+    public int getDepth() {
+        return levels.size();
+    }
+
+    /**
+     * Return the number of notebooks of the largest level.
+     */
+    public int getWidth() {
+        return levels.stream().mapToInt(level -> level.length).max().orElse(0);
+    }
+
+    /**
+     * Return one of the longest chains of notebooks, from the first level to the last.
+     */
+    public int[] getCriticalPath() {
+        return criticalPath;
+    }
+}
@@ -0,0 +1,563 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The notebooks of a commit and the datasets they consume and produce.
+ * <p>
+ * Notebooks and datasets are numbered from zero, notebooks in path order and datasets in name order, comparing the
+ * UTF-8 bytes of the names so that lookups can compare the strings in place. The edges
+ * are stored as compressed sparse rows (an offset array and an adjacency array) in both directions so that
+ * traversals only touch int arrays. Instances are immutable and thread safe.
+ * <p>
+ * The whole graph is a single buffer: an interned string table and the int arrays, in the format of the
+ * snapshot files. A graph read from a snapshot is memory mapped and nothing is deserialized; strings are decoded
+ * when they are asked for. The offsets and ids are checked once when the graph is mapped, so that a corrupted
+ * snapshot is rejected by {@link #read(Path)} instead of failing the queries.
+ */
+public final class LineageGraph {
+
+    private static final int MAGIC = 0x42504c47; // "BPLG"
+    // 2: strings in UTF-8 byte order, instead of UTF-16.
+    private static final int VERSION = 2;
+    private static final int HEADER_INTS = 8;
+
+    private static final int[] EMPTY = new int[0];
+
+    private static final Comparator<String> UTF8_ORDER = Comparator.comparing(
+            (String string) -> string.getBytes(StandardCharsets.UTF_8), Arrays::compareUnsigned);
+
+    private final ByteBuffer buffer;
+
+    private final int notebookCount;
+    private final int datasetCount;
+
+    // Indexes of the string table.
+    private final IntBuffer stringOffsets;
+    private final ByteBuffer strings;
+    private final IntBuffer paths;
+    private final IntBuffer blobIds;
+    private final IntBuffer datasets;
+
+    // Notebooks sorted by blob id, for lookups.
+    private final IntBuffer byBlobId;
+
+    // Notebook to datasets.
+    private final IntBuffer inputOffsets;
+    private final IntBuffer inputs;
+    private final IntBuffer outputOffsets;
+    private final IntBuffer outputs;
+
+    // Dataset to notebooks.
+    private final IntBuffer consumerOffsets;
+    private final IntBuffer consumers;
+    private final IntBuffer producerOffsets;
+    private final IntBuffer producers;
+
+    private LineageGraph(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_INTS * Integer.BYTES) {
+            throw new IOException("lineage graph is truncated");
+        }
+        IntBuffer header = buffer.duplicate().position(0).limit(HEADER_INTS * Integer.BYTES).slice().asIntBuffer();
+        if (header.get(0) != MAGIC) {
+            throw new IOException("not a lineage graph");
+        }
+        if (header.get(1) != VERSION) {
+            throw new IOException("unsupported lineage graph version " + header.get(1));
+        }
+        this.notebookCount = header.get(2);
+        this.datasetCount = header.get(3);
+        int stringCount = header.get(4);
+        int inputCount = header.get(5);
+        int outputCount = header.get(6);
+        int stringBytes = header.get(7);
+
+        long size = (long) Integer.BYTES * (HEADER_INTS + stringCount + 1 + 3L * notebookCount + datasetCount
+                + 2L * (notebookCount + 1) + 2L * (datasetCount + 1) + 2L * (inputCount + outputCount))
+                + stringBytes;
+        if (notebookCount < 0 || datasetCount < 0 || stringCount < 0 || inputCount < 0 || outputCount < 0
+                || stringBytes < 0 || size != buffer.capacity()) {
+            throw new IOException("lineage graph is corrupted");
+        }
+
+        Sections sections = new Sections(buffer, HEADER_INTS * Integer.BYTES);
+        this.stringOffsets = sections.next(stringCount + 1);
+        this.paths = sections.next(notebookCount);
+        this.blobIds = sections.next(notebookCount);
+        this.datasets = sections.next(datasetCount);
+        this.byBlobId = sections.next(notebookCount);
+        this.inputOffsets = sections.next(notebookCount + 1);
+        this.inputs = sections.next(inputCount);
+        this.outputOffsets = sections.next(notebookCount + 1);
+        this.outputs = sections.next(outputCount);
+        this.consumerOffsets = sections.next(datasetCount + 1);
+        this.consumers = sections.next(inputCount);
+        this.producerOffsets = sections.next(datasetCount + 1);
+        this.producers = sections.next(outputCount);
+        this.strings = sections.bytes(stringBytes);
+
+        checkOffsets(stringOffsets, stringBytes);
+        checkIds(paths, stringCount);
+        checkIds(blobIds, stringCount);
+        checkIds(datasets, stringCount);
+        checkIds(byBlobId, notebookCount);
+        checkOffsets(inputOffsets, inputCount);
+        checkIds(inputs, datasetCount);
+        checkOffsets(outputOffsets, outputCount);
+        checkIds(outputs, datasetCount);
+        checkOffsets(consumerOffsets, inputCount);
+        checkIds(consumers, notebookCount);
+        checkOffsets(producerOffsets, outputCount);
+        checkIds(producers, notebookCount);
+    }
+
+    /**
+     * Check that the offsets start at zero, never decrease and end at the length of the values.
+     */
+    private static void checkOffsets(IntBuffer offsets, int length) throws IOException {
+        int previous = 0;
+        for (int i = 0; i < offsets.capacity(); i++) {
+            int offset = offsets.get(i);
+            if (i == 0 ? offset != 0 : offset < previous) {
+                throw new IOException("lineage graph is corrupted: invalid offsets");
+            }
+            previous = offset;
+        }
+        if (previous != length) {
+            throw new IOException("lineage graph is corrupted: invalid offsets");
+        }
+    }
+
+    private static void checkIds(IntBuffer ids, int count) throws IOException {
+        for (int i = 0; i < ids.capacity(); i++) {
+            int id = ids.get(i);
+            if (id < 0 || id >= count) {
+                throw new IOException("lineage graph is corrupted: invalid id " + id);
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Map a graph written with {@link #write(Path)}. The file must not be modified while the graph is in use.
+     */
+    public static LineageGraph read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed.
+            return new LineageGraph(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write the graph to a file. The file is replaced atomically so that concurrent readers never see partial
+     * content.
+     */
+    public void write(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer content = buffer.duplicate().clear();
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private String string(int index) {
+        int start = stringOffsets.get(index);
+        byte[] bytes = new byte[stringOffsets.get(index + 1) - start];
+        strings.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare a string of the table with the UTF-8 bytes of another, without decoding it.
+     */
+    private int compare(int index, byte[] other) {
+        int start = stringOffsets.get(index);
+        int length = stringOffsets.get(index + 1) - start;
+        int common = Math.min(length, other.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.compareUnsigned(strings.get(start + i), other[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return length - other.length;
+    }
+
+    private static int[] row(IntBuffer offsets, IntBuffer values, int index) {
+        int start = offsets.get(index);
+        int[] row = new int[offsets.get(index + 1) - start];
+        values.get(start, row);
+        return row;
+    }
+
+    /**
+     * Return the number of notebooks.
+     */
+    public int size() {
+        return notebookCount;
+    }
+
+    /**
+     * Return the number of datasets.
+     */
+    public int datasetCount() {
+        return datasetCount;
+    }
+
+    /**
+     * Return the number of notebook to dataset edges.
+     */
+    public int edgeCount() {
+        return inputs.capacity() + outputs.capacity();
+    }
+
+    public String getPath(int notebook) {
+        return string(paths.get(notebook));
+    }
+
+    public String getBlobId(int notebook) {
+        return string(blobIds.get(notebook));
+    }
+
+    public String getDataset(int dataset) {
+        return string(datasets.get(dataset));
+    }
+
+    /**
+     * Return the datasets the notebook consumes, in name order.
+     */
+    public int[] getInputs(int notebook) {
+        return row(inputOffsets, inputs, notebook);
+    }
+
+    /**
+     * Return the datasets the notebook produces, in name order.
+     */
+    public int[] getOutputs(int notebook) {
+        return row(outputOffsets, outputs, notebook);
+    }
+
+    /**
+     * Return the notebooks that consume the dataset.
+     */
+    public int[] getConsumers(int dataset) {
+        return row(consumerOffsets, consumers, dataset);
+    }
+
+    /**
+     * Return the notebooks that produce the dataset.
+     */
+    public int[] getProducers(int dataset) {
+        return row(producerOffsets, producers, dataset);
+    }
+
+    /**
+     * Return the notebooks with the given blob id. The same content can be committed at several paths.
+     */
+    public int[] findNotebooks(String blobId) {
+        byte[] key = blobId.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = notebookCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(blobIds.get(byBlobId.get(middle)), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = low;
+        while (end < notebookCount && compare(blobIds.get(byBlobId.get(end)), key) == 0) {
+            end++;
+        }
+        if (end == low) {
+            return EMPTY;
+        }
+        int[] notebooks = new int[end - low];
+        byBlobId.get(low, notebooks);
+        Arrays.sort(notebooks);
+        return notebooks;
+    }
+
+    /**
+     * Return the id of the dataset, if a notebook of the commit uses it.
+     */
+    public OptionalInt findDataset(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = datasetCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(datasets.get(middle), key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return OptionalInt.of(middle);
+            }
+        }
+        return OptionalInt.empty();
+    }
+
+    /**
+     * Return all the notebooks.
+     */
+    public BitSet all() {
+        BitSet all = new BitSet(notebookCount);
+        all.set(0, notebookCount);
+        return all;
+    }
+
+    /**
+     * Return the given notebooks and all the notebooks that consume, directly or not, what they produce.
+     */
+    public BitSet forward(int... notebooks) {
+        return traverse(notebooks, outputOffsets, outputs, consumerOffsets, consumers);
+    }
+
+    /**
+     * Return the given notebooks and all the notebooks that produce, directly or not, what they consume.
+     */
+    public BitSet backward(int... notebooks) {
+        return traverse(notebooks, inputOffsets, inputs, producerOffsets, producers);
+    }
+
+    /**
+     * Breadth first traversal alternating between notebook to dataset and dataset to notebook edges. Each node is
+     * visited once, so cycles are fine.
+     */
+    private BitSet traverse(int[] starts, IntBuffer notebookOffsets, IntBuffer notebookEdges,
+                            IntBuffer datasetOffsets, IntBuffer datasetEdges) {
+        BitSet visited = new BitSet(notebookCount);
+        BitSet visitedDatasets = new BitSet(datasetCount);
+        int[] queue = new int[notebookCount];
+        int head = 0;
+        int tail = 0;
+        for (int start : starts) {
+            Objects.checkIndex(start, notebookCount);
+            if (!visited.get(start)) {
+                visited.set(start);
+                queue[tail++] = start;
+            }
+        }
+        while (head < tail) {
+            int notebook = queue[head++];
+            for (int i = notebookOffsets.get(notebook); i < notebookOffsets.get(notebook + 1); i++) {
+                int dataset = notebookEdges.get(i);
+                if (visitedDatasets.get(dataset)) {
+                    continue;
+                }
+                visitedDatasets.set(dataset);
+                for (int j = datasetOffsets.get(dataset); j < datasetOffsets.get(dataset + 1); j++) {
+                    int next = datasetEdges.get(j);
+                    if (!visited.get(next)) {
+                        visited.set(next);
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Consecutive slices of the graph buffer.
+     */
+    private static final class Sections {
+
+        private final ByteBuffer buffer;
+        private int position;
+
+        private Sections(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private IntBuffer next(int length) {
+            return bytes(length * Integer.BYTES).asIntBuffer();
+        }
+
+        private ByteBuffer bytes(int length) {
+            ByteBuffer slice = buffer.duplicate().position(position).limit(position + length).slice();
+            position += length;
+            return slice;
+        }
+    }
+
+    /**
+     * Collects the notebooks of a graph. Not thread safe.
+     */
+    public static final class Builder {
+
+        private final List<Entry> entries = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Add a notebook committed at the given path.
+         */
+        public Builder addNotebook(String path, String blobId, Collection<String> inputs,
+                                   Collection<String> outputs) {
+            entries.add(new Entry(Objects.requireNonNull(path), Objects.requireNonNull(blobId),
+                    toSortedSet(inputs), toSortedSet(outputs)));
+            return this;
+        }
+
+        private static SortedSet<String> toSortedSet(Collection<String> names) {
+            SortedSet<String> sorted = new TreeSet<>(UTF8_ORDER);
+            sorted.addAll(names);
+            return sorted;
+        }
+
+        private static int[] flatten(int[][] rows, int[] offsets) {
+            for (int i = 0; i < rows.length; i++) {
+                offsets[i + 1] = offsets[i] + rows[i].length;
+            }
+            int[] values = new int[offsets[rows.length]];
+            for (int i = 0; i < rows.length; i++) {
+                System.arraycopy(rows[i], 0, values, offsets[i], rows[i].length);
+            }
+            return values;
+        }
+
+        /**
+         * Transpose the rows, filling the offsets of the inverted rows. Inverted rows are sorted.
+         */
+        private static int[] invert(int[] offsets, int[] values, int[] invertedOffsets) {
+            for (int value : values) {
+                invertedOffsets[value + 1]++;
+            }
+            for (int i = 1; i < invertedOffsets.length; i++) {
+                invertedOffsets[i] += invertedOffsets[i - 1];
+            }
+            int[] next = Arrays.copyOf(invertedOffsets, invertedOffsets.length - 1);
+            int[] inverted = new int[values.length];
+            for (int row = 0; row + 1 < offsets.length; row++) {
+                for (int i = offsets[row]; i < offsets[row + 1]; i++) {
+                    inverted[next[values[i]]++] = row;
+                }
+            }
+            return inverted;
+        }
+
+        public LineageGraph build() {
+            List<Entry> sorted = new ArrayList<>(entries);
+            sorted.sort(Comparator.comparing((Entry entry) -> entry.path).thenComparing(entry -> entry.blobId));
+            int notebookCount = sorted.size();
+
+            SortedSet<String> names = new TreeSet<>(UTF8_ORDER);
+            for (Entry entry : sorted) {
+                names.addAll(entry.inputs);
+                names.addAll(entry.outputs);
+            }
+            Map<String, Integer> datasetIds = new HashMap<>();
+            for (String name : names) {
+                datasetIds.put(name, datasetIds.size());
+            }
+
+            // Each distinct string is stored once.
+            Map<String, Integer> stringIds = new LinkedHashMap<>();
+            int[] datasets = names.stream().mapToInt(name -> intern(stringIds, name)).toArray();
+            int[] paths = new int[notebookCount];
+            int[] blobIds = new int[notebookCount];
+            int[][] inputRows = new int[notebookCount][];
+            int[][] outputRows = new int[notebookCount][];
+            for (int i = 0; i < notebookCount; i++) {
+                Entry entry = sorted.get(i);
+                paths[i] = intern(stringIds, entry.path);
+                blobIds[i] = intern(stringIds, entry.blobId);
+                // Sorted since both the sets and the ids are in name order.
+                inputRows[i] = entry.inputs.stream().mapToInt(datasetIds::get).toArray();
+                outputRows[i] = entry.outputs.stream().mapToInt(datasetIds::get).toArray();
+            }
+
+            int[] byBlobId = new int[notebookCount];
+            Integer[] order = new Integer[notebookCount];
+            for (int i = 0; i < notebookCount; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(notebook -> sorted.get(notebook).blobId, UTF8_ORDER));
+            for (int i = 0; i < notebookCount; i++) {
+                byBlobId[i] = order[i];
+            }
+
+            int[] inputOffsets = new int[notebookCount + 1];
+            int[] inputs = flatten(inputRows, inputOffsets);
+            int[] outputOffsets = new int[notebookCount + 1];
+            int[] outputs = flatten(outputRows, outputOffsets);
+            int[] consumerOffsets = new int[datasets.length + 1];
+            int[] consumers = invert(inputOffsets, inputs, consumerOffsets);
+            int[] producerOffsets = new int[datasets.length + 1];
+            int[] producers = invert(outputOffsets, outputs, producerOffsets);
+
+            List<byte[]> encoded = new ArrayList<>(stringIds.size());
+            int[] stringOffsets = new int[stringIds.size() + 1];
+            for (String string : stringIds.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                stringOffsets[encoded.size() + 1] = stringOffsets[encoded.size()] + bytes.length;
+                encoded.add(bytes);
+            }
+            int stringBytes = stringOffsets[encoded.size()];
+
+            List<int[]> sections = List.of(stringOffsets, paths, blobIds, datasets, byBlobId,
+                    inputOffsets, inputs, outputOffsets, outputs,
+                    consumerOffsets, consumers, producerOffsets, producers);
+            int ints = HEADER_INTS + sections.stream().mapToInt(section -> section.length).sum();
+            ByteBuffer buffer = ByteBuffer.allocate(ints * Integer.BYTES + stringBytes);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(notebookCount).putInt(datasets.length)
+                    .putInt(encoded.size()).putInt(inputs.length).putInt(outputs.length).putInt(stringBytes);
+            for (int[] section : sections) {
+                buffer.asIntBuffer().put(section);
+                buffer.position(buffer.position() + section.length * Integer.BYTES);
+            }
+            encoded.forEach(buffer::put);
+            try {
+                return new LineageGraph(buffer.clear());
+            } catch (IOException ioe) {
+                throw new IllegalStateException(ioe);
+            }
+        }
+
+        private static int intern(Map<String, Integer> ids, String string) {
+            return ids.computeIfAbsent(string, key -> ids.size());
+        }
+
+        private static final class Entry {
+
+            private final String path;
+            private final String blobId;
+            private final SortedSet<String> inputs;
+            private final SortedSet<String> outputs;
+
+            private Entry(String path, String blobId, SortedSet<String> inputs, SortedSet<String> outputs) {
+                this.path = path;
+                this.blobId = blobId;
+                this.inputs = inputs;
+                this.outputs = outputs;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Binary snapshots of the lineage graphs of the parsed commits, one file per commit.
+ * <p>
+ * The files are memory mapped when read, so a graph costs almost no heap and nothing has to be loaded from
+ * the database after a restart. Failures are logged and treated as missing snapshots; the graph can always be
+ * rebuilt from the database.
+ */
+public class LineageSnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(LineageSnapshots.class);
+
+    private static final String SUFFIX = ".lineage";
+
+    private final Path directory;
+
+    public LineageSnapshots(Path directory) {
+        this.directory = Objects.requireNonNull(directory);
+    }
+
+    private Path snapshotPath(String repositoryId, String commitId) {
+        // Ids are hashes, but they come from requests.
+        Path root = directory.normalize();
+        Path path = root.resolve(repositoryId).resolve(commitId + SUFFIX).normalize();
+        if (path.getParent() == null || !root.equals(path.getParent().getParent())) {
+            throw new IllegalArgumentException("invalid repository or commit id");
+        }
+        return path;
+    }
+
+    public Optional<LineageGraph> read(String repositoryId, String commitId) {
+        Path path;
+        try {
+            path = snapshotPath(repositoryId, commitId);
+        } catch (IllegalArgumentException iae) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(LineageGraph.read(path));
+        } catch (NoSuchFileException nsfe) {
+            return Optional.empty();
+        } catch (IOException ioe) {
+            log.warn("ignoring unreadable lineage snapshot {}", path, ioe);
+            return Optional.empty();
+        }
+    }
+
+    public void write(String repositoryId, String commitId, LineageGraph graph) {
+        Path path = snapshotPath(repositoryId, commitId);
+        try {
+            graph.write(path);
+        } catch (IOException ioe) {
+            log.warn("could not write lineage snapshot {}", path, ioe);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * The transitive closure of the notebooks of a {@link LineageGraph}.
+ * <p>
+ * The notebook graph is condensed into its {@link StronglyConnectedComponents} and each component gets a bitset
+ * row of the notebooks it reaches, computed once in reverse topological order. Reachability checks are then a bit
+ * lookup and batch queries a union of rows, whatever the depth of the graph. The index uses about n * n / 8 bytes
+ * for n notebooks in the worst case. Instances are immutable and thread safe.
+ */
+public final class ReachabilityIndex {
+
+    private final LineageGraph graph;
+    private final int[] components;
+    private final BitSet[] rows;
+
+    private ReachabilityIndex(LineageGraph graph, int[] components, BitSet[] rows) {
+        this.graph = graph;
+        this.components = components;
+        this.rows = rows;
+    }
+
+    public static ReachabilityIndex create(LineageGraph graph) {
+        var components = StronglyConnectedComponents.find(graph);
+        int size = graph.size();
+
+        // The rows of the components a component points to always come first.
+        BitSet[] rows = new BitSet[components.count()];
+        for (int component = 0; component < rows.length; component++) {
+            BitSet row = new BitSet(size);
+            for (int member : components.getMembers(component)) {
+                row.set(member);
+                for (int next : components.getSuccessors(member)) {
+                    int nextComponent = components.getComponent(next);
+                    if (nextComponent != component) {
+                        row.or(rows[nextComponent]);
+                    }
+                }
+            }
+            rows[component] = row;
+        }
+
+        int[] notebookComponents = new int[size];
+        for (int notebook = 0; notebook < size; notebook++) {
+            notebookComponents[notebook] = components.getComponent(notebook);
+        }
+        return new ReachabilityIndex(graph, notebookComponents, rows);
+    }
+
+    public LineageGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Return an estimate of the memory used by the rows and the components of the index, in bytes. The graph is
+     * not included.
+     */
+    public long getByteSize() {
+        long words = 0;
+        for (BitSet row : rows) {
+            words += row.size() / Long.SIZE;
+        }
+        return words * Long.BYTES + (long) components.length * Integer.BYTES;
+    }
+
+    /**
+     * Return true if the notebook "to" consumes, directly or not, something the notebook "from" produces. A
+     * notebook reaches itself.
+     */
+    public boolean reaches(int from, int to) {
+        Objects.checkIndex(to, components.length);
+        return rows[components[from]].get(to);
+    }
+
+    /**
+     * Return the given notebooks and the notebooks they reach.
+     */
+    public BitSet downstream(int... notebooks) {
+        BitSet downstream = new BitSet(components.length);
+        for (int notebook : notebooks) {
+            downstream.or(rows[components[notebook]]);
+        }
+        return downstream;
+    }
+
+    /**
+     * Return the given notebooks and the notebooks that reach them.
+     */
+    public BitSet upstream(int... notebooks) {
+        BitSet targets = new BitSet(components.length);
+        for (int notebook : notebooks) {
+            targets.set(notebook);
+        }
+        BitSet upstream = new BitSet(components.length);
+        for (int notebook = 0; notebook < components.length; notebook++) {
+            if (rows[components[notebook]].intersects(targets)) {
+                upstream.set(notebook);
+            }
+        }
+        return upstream;
+    }
+
+    /**
+     * Return the notebooks that consume the datasets, directly or not.
+     */
+    public BitSet downstreamOfDatasets(int... datasets) {
+        return downstream(Arrays.stream(datasets).flatMap(dataset -> Arrays.stream(graph.getConsumers(dataset)))
+                .toArray());
+    }
+
+    /**
+     * Return the notebooks that produce the datasets, directly or not.
+     */
+    public BitSet upstreamOfDatasets(int... datasets) {
+        return upstream(Arrays.stream(datasets).flatMap(dataset -> Arrays.stream(graph.getProducers(dataset)))
+                .toArray());
+    }
+}
@@ -0,0 +1,136 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The strongly connected components of the notebooks of a {@link LineageGraph}, found with an iterative version
+ * of Tarjan's algorithm.
+ * <p>
+ * A notebook points to the notebooks that consume what it produces. Components are numbered in reverse
+ * topological order: the components a component points to always have smaller numbers.
+ */
+final class StronglyConnectedComponents {
+
+    private final int[][] successors;
+    private final int[] components;
+    private final int[][] members;
+
+    private StronglyConnectedComponents(int[][] successors, int[] components, int[][] members) {
+        this.successors = successors;
+        this.components = components;
+        this.members = members;
+    }
+
+    static StronglyConnectedComponents find(LineageGraph graph) {
+        int size = graph.size();
+
+        // Notebook to notebook edges through the datasets.
+        int[][] successors = new int[size][];
+        for (int notebook = 0; notebook < size; notebook++) {
+            BitSet next = new BitSet(size);
+            for (int dataset : graph.getOutputs(notebook)) {
+                for (int consumer : graph.getConsumers(dataset)) {
+                    next.set(consumer);
+                }
+            }
+            successors[notebook] = next.stream().toArray();
+        }
+
+        int[] order = new int[size];
+        int[] low = new int[size];
+        int[] components = new int[size];
+        Arrays.fill(order, -1);
+        int[] stack = new int[size];
+        boolean[] onStack = new boolean[size];
+        int stackSize = 0;
+        int[] callNotebooks = new int[size];
+        int[] callEdges = new int[size];
+        int counter = 0;
+        int count = 0;
+
+        for (int root = 0; root < size; root++) {
+            if (order[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callNotebooks[0] = root;
+            callEdges[0] = 0;
+            order[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (depth >= 0) {
+                int notebook = callNotebooks[depth];
+                if (callEdges[depth] < successors[notebook].length) {
+                    int next = successors[notebook][callEdges[depth]++];
+                    if (order[next] == -1) {
+                        order[next] = low[next] = counter++;
+                        stack[stackSize++] = next;
+                        onStack[next] = true;
+                        depth++;
+                        callNotebooks[depth] = next;
+                        callEdges[depth] = 0;
+                    } else if (onStack[next]) {
+                        low[notebook] = Math.min(low[notebook], order[next]);
+                    }
+                    continue;
+                }
+
+                if (low[notebook] == order[notebook]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        components[member] = count;
+                    } while (member != notebook);
+                    count++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callNotebooks[depth];
+                    low[parent] = Math.min(low[parent], low[notebook]);
+                }
+            }
+        }
+
+        // Members in path order.
+        int[] sizes = new int[count];
+        for (int component : components) {
+            sizes[component]++;
+        }
+        int[][] members = new int[count][];
+        for (int component = 0; component < count; component++) {
+            members[component] = new int[sizes[component]];
+        }
+        Arrays.fill(sizes, 0);
+        for (int notebook = 0; notebook < size; notebook++) {
+            int component = components[notebook];
+            members[component][sizes[component]++] = notebook;
+        }
+        return new StronglyConnectedComponents(successors, components, members);
+    }
+
+    /**
+     * Return the notebooks that consume what the notebook produces, in path order. A notebook that consumes
+     * its own output is its own successor.
+     */
+    int[] getSuccessors(int notebook) {
+        return successors[notebook];
+    }
+
+    int getComponent(int notebook) {
+        return components[notebook];
+    }
+
+    /**
+     * Return the notebooks of the component, in path order.
+     */
+    int[] getMembers(int component) {
+        return members[component];
+    }
+
+    int count() {
+        return members.length;
+    }
+}
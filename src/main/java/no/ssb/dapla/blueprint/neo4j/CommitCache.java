@@ -0,0 +1,99 @@
+package no.ssb.dapla.blueprint.neo4j;
+
+import no.ssb.dapla.blueprint.cache.WeightedCache;
+import no.ssb.dapla.blueprint.lineage.LineageGraph;
+import no.ssb.dapla.blueprint.lineage.LineageSnapshots;
+import no.ssb.dapla.blueprint.lineage.ReachabilityIndex;
+import no.ssb.dapla.blueprint.neo4j.projection.FileRow;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Read-through cache of the commit queries of a {@link NotebookStore}.
+ * <p>
+ * A parsed commit never changes so the results can be kept until they are evicted. The files of each commit weigh
+ * their number of files and datasets and each lineage graph its number of nodes and edges, each bounded by the
+ * maximum weight. Reachability indexes grow with the square of the number of notebooks, so they are bounded by
+ * their size in bytes instead.
+ */
+public class CommitCache {
+
+    public static final long DEFAULT_MAX_INDEX_BYTES = 64 * 1024 * 1024;
+
+    private final NotebookStore store;
+    private final LineageSnapshots snapshots;
+    private final WeightedCache<List<String>, List<FileRow>> files;
+    private final WeightedCache<List<String>, LineageGraph> lineages;
+    private final WeightedCache<List<String>, ReachabilityIndex> indexes;
+
+    public CommitCache(NotebookStore store, long maxWeight) {
+        this(store, null, maxWeight, DEFAULT_MAX_INDEX_BYTES);
+    }
+
+    /**
+     * @param snapshots     where the lineage graphs are read from before falling back to the store, and written to
+     *                      when they are missing. Can be null.
+     * @param maxIndexBytes the maximum size of the reachability indexes, see {@link ReachabilityIndex#getByteSize()}.
+     */
+    public CommitCache(NotebookStore store, LineageSnapshots snapshots, long maxWeight, long maxIndexBytes) {
+        this.store = Objects.requireNonNull(store);
+        this.snapshots = snapshots;
+        this.files = new WeightedCache<>(maxWeight, CommitCache::weigh);
+        this.lineages = new WeightedCache<>(maxWeight,
+                graph -> graph.size() + graph.datasetCount() + graph.edgeCount() + 1);
+        this.indexes = new WeightedCache<>(maxIndexBytes, ReachabilityIndex::getByteSize);
+    }
+
+    private static long weigh(List<FileRow> files) {
+        return files.stream()
+                .mapToLong(file -> 1 + file.getInputs().size() + file.getOutputs().size()
+                        + file.getPreviousOutputs().size())
+                .sum() + 1;
+    }
+
+    /**
+     * @see NotebookStore#getFiles(String, String)
+     */
+    public Optional<List<FileRow>> getFiles(String repositoryId, String commitId) {
+        return files.get(List.of(repositoryId, commitId), key -> store.getFiles(repositoryId, commitId));
+    }
+
+    /**
+     * @see NotebookStore#getLineage(String, String)
+     */
+    public Optional<LineageGraph> getLineage(String repositoryId, String commitId) {
+        return lineages.get(List.of(repositoryId, commitId), key -> loadLineage(repositoryId, commitId));
+    }
+
+    private Optional<LineageGraph> loadLineage(String repositoryId, String commitId) {
+        if (snapshots == null) {
+            return store.getLineage(repositoryId, commitId);
+        }
+        Optional<LineageGraph> snapshot = snapshots.read(repositoryId, commitId);
+        if (snapshot.isPresent()) {
+            return snapshot;
+        }
+        // Commits parsed before the snapshots existed.
+        Optional<LineageGraph> graph = store.getLineage(repositoryId, commitId);
+        graph.ifPresent(lineage -> snapshots.write(repositoryId, commitId, lineage));
+        return graph;
+    }
+
+    /**
+     * Return the reachability index of the lineage of a commit.
+     *
+     * @see #getLineage(String, String)
+     */
+    public Optional<ReachabilityIndex> getReachability(String repositoryId, String commitId) {
+        return indexes.get(List.of(repositoryId, commitId),
+                key -> getLineage(repositoryId, commitId).map(ReachabilityIndex::create));
+    }
+
+    public void invalidateAll() {
+        files.invalidateAll();
+        lineages.invalidateAll();
+        indexes.invalidateAll();
+    }
+}
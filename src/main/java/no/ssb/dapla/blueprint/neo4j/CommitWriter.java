@@ -0,0 +1,168 @@
+package no.ssb.dapla.blueprint.neo4j;
+
+import no.ssb.dapla.blueprint.neo4j.converters.URIStringConverter;
+import no.ssb.dapla.blueprint.neo4j.model.Commit;
+import no.ssb.dapla.blueprint.neo4j.model.CommittedFile;
+import no.ssb.dapla.blueprint.neo4j.model.Dataset;
+import no.ssb.dapla.blueprint.neo4j.model.Notebook;
+import no.ssb.dapla.blueprint.neo4j.model.Repository;
+import no.ssb.dapla.blueprint.neo4j.model.UpdatedFile;
+import org.neo4j.ogm.session.Session;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Writes a commit with a fixed number of <code>UNWIND ... MERGE</code> statements.
+ * <p>
+ * The entities are written the way the OGM maps them, but the object graph is not diffed and nothing is loaded
+ * back: the notebooks, datasets and files are sent as parameter lists, at most chunkSize rows per statement.
+ * The statements run in the transaction of the session, if any.
+ */
+final class CommitWriter {
+
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static final String MERGE_COMMIT = """
+            MERGE (commit:Commit {id: $id})
+            SET commit += $properties
+            """;
+
+    private static final String MERGE_NOTEBOOKS = """
+            UNWIND $rows AS blobId
+            MERGE (:Notebook {blobId: blobId})
+            """;
+
+    private static final String MERGE_DATASETS = """
+            UNWIND $rows AS row
+            MATCH (notebook:Notebook {blobId: row.blobId})
+            MERGE (dataset:Dataset {path: row.path})
+            MERGE (notebook)-[:%s]->(dataset)
+            """;
+
+    private static final String MERGE_FILES = """
+            UNWIND $rows AS row
+            MATCH (commit:Commit {id: $id})
+            MATCH (notebook:Notebook {blobId: row.blobId})
+            MERGE (commit)-[:%s {path: row.path}]->(notebook)
+            """;
+
+    private static final String MERGE_UPDATES = """
+            UNWIND $rows AS row
+            MATCH (commit:Commit {id: $id})
+            MATCH (notebook:Notebook {blobId: row.blobId})
+            MERGE (commit)-[file:UPDATES {path: row.path}]->(notebook)
+            SET file.previousBlobId = row.previousBlobId
+            """;
+
+    private static final String MERGE_REPOSITORY = """
+            MATCH (commit:Commit {id: $id})
+            MERGE (repository:Repository {id: $repositoryId})
+            ON CREATE SET repository.uri = $uri
+            MERGE (repository)-[:CONTAINS]->(commit)
+            """;
+
+    private final int chunkSize;
+
+    CommitWriter(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    CommitWriter() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    private static String format(Instant instant) {
+        return instant == null ? null : DateTimeFormatter.ISO_INSTANT.format(instant);
+    }
+
+    /**
+     * Write the commit and add it to the repository. The other commits of the repository are not touched.
+     */
+    void write(Session session, Repository repository, Commit commit) {
+        write(session, commit);
+        session.query(MERGE_REPOSITORY, Map.of(
+                "id", commit.getId(),
+                "repositoryId", repository.getId(),
+                "uri", new URIStringConverter().toGraphProperty(repository.getUri())
+        ));
+    }
+
+    void write(Session session, Commit commit) {
+        // HashMap since absent values are null.
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("authorName", commit.getAuthorName());
+        properties.put("authorEmail", commit.getAuthorEmail());
+        properties.put("authoredAt", format(commit.getAuthoredAt()));
+        properties.put("committerName", commit.getCommitterName());
+        properties.put("committerEmail", commit.getCommitterEmail());
+        properties.put("committedAt", format(commit.getCommittedAt()));
+        properties.put("message", commit.getMessage());
+        session.query(MERGE_COMMIT, Map.of("id", commit.getId(), "properties", properties));
+
+        List<CommittedFile> files = new ArrayList<>();
+        files.addAll(commit.getCreates());
+        files.addAll(commit.getUpdates());
+        files.addAll(commit.getDeletes());
+        files.addAll(commit.getUnchanged());
+
+        Set<String> notebooks = new LinkedHashSet<>();
+        Set<Map<String, Object>> consumes = new LinkedHashSet<>();
+        Set<Map<String, Object>> produces = new LinkedHashSet<>();
+        for (CommittedFile file : files) {
+            Notebook notebook = file.getNotebook();
+            notebooks.add(notebook.getBlobId());
+            for (Dataset input : notebook.getInputs()) {
+                consumes.add(row(notebook.getBlobId(), input.getPath()));
+            }
+            for (Dataset output : notebook.getOutputs()) {
+                produces.add(row(notebook.getBlobId(), output.getPath()));
+            }
+        }
+        run(session, MERGE_NOTEBOOKS, Map.of(), new ArrayList<>(notebooks));
+        run(session, String.format(MERGE_DATASETS, "CONSUMES"), Map.of(), new ArrayList<>(consumes));
+        run(session, String.format(MERGE_DATASETS, "PRODUCES"), Map.of(), new ArrayList<>(produces));
+
+        Map<String, Object> id = Map.of("id", commit.getId());
+        run(session, String.format(MERGE_FILES, "CREATES"), id, toRows(commit.getCreates()));
+        run(session, MERGE_UPDATES, id, toUpdateRows(commit.getUpdates()));
+        run(session, String.format(MERGE_FILES, "DELETES"), id, toRows(commit.getDeletes()));
+        run(session, String.format(MERGE_FILES, "UNCHANGED"), id, toRows(commit.getUnchanged()));
+    }
+
+    private static Map<String, Object> row(String blobId, Path path) {
+        return Map.of("blobId", blobId, "path", path.toString());
+    }
+
+    private static List<Map<String, Object>> toRows(Set<? extends CommittedFile> files) {
+        List<Map<String, Object>> rows = new ArrayList<>(files.size());
+        for (CommittedFile file : files) {
+            rows.add(row(file.getNotebook().getBlobId(), file.getPath()));
+        }
+        return rows;
+    }
+
+    private static List<Map<String, Object>> toUpdateRows(Set<UpdatedFile> files) {
+        List<Map<String, Object>> rows = new ArrayList<>(files.size());
+        for (UpdatedFile file : files) {
+            // HashMap since the previous blob id can be null.
+            Map<String, Object> row = new HashMap<>(row(file.getNotebook().getBlobId(), file.getPath()));
+            row.put("previousBlobId", file.getPreviousBlobId());
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private void run(Session session, String cypher, Map<String, Object> parameters, List<?> rows) {
+        for (int from = 0; from < rows.size(); from += chunkSize) {
+            Map<String, Object> chunkParameters = new HashMap<>(parameters);
+            chunkParameters.put("rows", rows.subList(from, Math.min(rows.size(), from + chunkSize)));
+            session.query(cypher, chunkParameters);
+        }
+    }
+}
@@ -1,42 +1,124 @@
 package no.ssb.dapla.blueprint.neo4j;
 
 import io.helidon.config.Config;
+import no.ssb.dapla.blueprint.cache.ClosingCache;
 import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.GitCommand;
 import org.eclipse.jgit.api.TransportCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.util.FS;
 import org.eclipse.jgit.util.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Stores and cache repositories.
+ * <p>
+ * Repositories are cloned in <code>github.path</code>, in a folder named after the hash of their remote. The open
+ * repositories are kept in a {@link ClosingCache} bounded by <code>github.cache.size</code> and
+ * <code>github.cache.idle-timeout</code>, so that the pack files and memory of the repositories that are not used
+ * are released. Clones that already exist, for instance after a restart, are opened when they are first read.
+ * <p>
+ * Repositories are only fetched when they do not have the requested commit. Concurrent fetches of a repository
+ * share one fetch, and a fetch starts at least <code>github.fetch.debounce</code> after the previous one so that
+ * bursts of pushes are served by a single fetch.
+ * <p>
+ * With <code>github.bare</code>, new repositories are bare and only fetch the ref they are asked for, or the
+ * default branch of the remote, without tags. Existing clones keep their layout.
+ * <p>
+ * With <code>github.pool</code> as well, new bare repositories share the objects of the repositories with the same
+ * history through {@link ObjectPools}, so that forks only download and store the commits that are their own. Their
+ * own objects are moved to the pool, so pooling is off by default.
+ * <p>
+ * A repository is marked as initialized once it has been cloned, seeded and has joined its pool. The steps of a
+ * repository without the mark, interrupted by a crash for instance, are done again when it is next read.
+ * <p>
+ * New repositories can be seeded with the branches of a local bundle or mirror, listed in <code>github.seeds</code>
+ * with the remote they are a copy of, so that only the commits that are missing from the seed are fetched from the
+ * remote.
  */
 public class GitStore {
 
+    private static final Logger log = LoggerFactory.getLogger(GitStore.class);
+
     private static final Path GIT_FOLDER = Path.of(".git");
     private static final Path LINKS_FOLDER = Path.of("links");
+    private static final Path INITIALIZED_FILE = Path.of("blueprint-initialized");
+    private static final String REMOTE = "origin";
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{40}");
+
+    private static final int DEFAULT_CACHE_SIZE = 32;
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    private static final Duration DEFAULT_FETCH_DEBOUNCE = Duration.ofSeconds(1);
+
+    /**
+     * A commit pushed during a fetch may not be part of it, so a second fetch is made if needed.
+     */
+    private static final int MAX_FETCHES = 2;
 
-    // TODO: Use a proper cache.
-    private final Map<String, Repository> hashRepoMap = new HashMap<>();
+    private final ClosingCache<String, Repository> repositories;
+    // Clones of the same repository are serialized.
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    // The fetch in progress and the start of the last fetch of each repository.
+    private final Map<String, CompletableFuture<Void>> fetches = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastFetches = new ConcurrentHashMap<>();
+    private final long fetchDebounce;
+    private final AtomicLong fetchCount = new AtomicLong();
+    private final boolean bare;
+    // Null when repositories do not share objects.
+    private final ObjectPools pools;
+    // The local bundle or mirror of the repositories, by hash.
+    private final Map<String, Path> seeds;
     private final Config config;
 
     public GitStore(Config config) {
         this.config = Objects.requireNonNull(config);
+        this.repositories = new ClosingCache<>(
+                config.get("github.cache.size").asInt().orElse(DEFAULT_CACHE_SIZE),
+                config.get("github.cache.idle-timeout").asString().map(Duration::parse).orElse(DEFAULT_IDLE_TIMEOUT)
+        );
+        this.fetchDebounce = config.get("github.fetch.debounce").asString().map(Duration::parse)
+                .orElse(DEFAULT_FETCH_DEBOUNCE).toNanos();
+        this.bare = config.get("github.bare").asBoolean().orElse(false);
+        this.pools = bare && config.get("github.pool").asBoolean().orElse(false)
+                ? new ObjectPools(getRepositoryPath())
+                : null;
+        this.seeds = config.get("github.seeds").asNodeList().orElse(List.of()).stream().collect(Collectors.toMap(
+                seed -> computeHash(URI.create(seed.get("remote").asString().get())),
+                seed -> Path.of(seed.get("path").asString().get())
+        ));
     }
 
     public static String computeHash(URI remote) {
@@ -51,21 +133,140 @@ public class GitStore {
 
     /**
      * Initialize, clone and fetch a repository.
+     * <p>
+     * The repository stays open until the returned lease is closed.
+     */
+    public ClosingCache.Lease<Repository> get(URI remote) throws IOException, GitAPIException {
+        return get(remote, null);
+    }
+
+    /**
+     * Initialize and clone a repository, and fetch it if it does not have the commit.
+     * <p>
+     * The repository stays open until the returned lease is closed.
+     *
+     * @param commitId the commit that is needed, or null to fetch once.
      */
-    public Repository get(URI remote) throws IOException, GitAPIException {
+    public ClosingCache.Lease<Repository> get(URI remote, String commitId) throws IOException, GitAPIException {
+        return get(remote, null, commitId);
+    }
+
+    /**
+     * Initialize and clone a repository, and fetch the ref if the repository does not have the commit.
+     * <p>
+     * Bare repositories only fetch the ref, or the default branch if it is null or not a valid ref name.
+     * Repositories with a work tree fetch all their branches. The repository stays open until the returned lease
+     * is closed.
+     *
+     * @param ref      the ref that contains the commit, refs/heads/main for instance.
+     * @param commitId the commit that is needed, or null to fetch once.
+     */
+    public ClosingCache.Lease<Repository> get(URI remote, String ref, String commitId)
+            throws IOException, GitAPIException {
         String hash = computeHash(remote);
 
         // Initialize.
-        if (!hashRepoMap.containsKey(hash)) {
-            hashRepoMap.put(hash, initializeRepository(hash, remote));
+        synchronized (locks.computeIfAbsent(hash, key -> new Object())) {
+            initializeRepository(hash, remote, ref);
         }
 
-        Repository repository = hashRepoMap.get(hash);
+        ClosingCache.Lease<Repository> repository = repositories.acquire(hash, this::openRepository);
+        try {
+            RefSpec refSpec = repository.get().isBare() ? toRefSpec(ref) : null;
+            if (commitId == null) {
+                fetch(hash, repository.get(), refSpec);
+            } else {
+                for (int attempt = 0; attempt < MAX_FETCHES && !hasCommit(repository.get(), commitId); attempt++) {
+                    fetch(hash, repository.get(), refSpec);
+                }
+            }
+        } catch (IOException | GitAPIException | RuntimeException e) {
+            repository.close();
+            throw e;
+        }
+        return repository;
+    }
+
+    private static boolean hasCommit(Repository repository, String commitId) throws IOException {
+        return ObjectId.isId(commitId) && repository.getObjectDatabase().has(ObjectId.fromString(commitId));
+    }
 
-        // Fetch latest always.
-        authenticate(Git.wrap(repository).fetch()).call();
+    /**
+     * Return the number of fetches made by get since the creation of the store.
+     */
+    long getFetchCount() {
+        return fetchCount.get();
+    }
 
-        return repository;
+    /**
+     * Return the ref spec that fetches only the ref. Branches are fetched as remote branches.
+     */
+    static RefSpec toRefSpec(String ref) {
+        if (ref == null || !ref.startsWith(Constants.R_REFS) || !Repository.isValidRefName(ref)) {
+            return new RefSpec().setForceUpdate(true)
+                    .setSourceDestination(Constants.HEAD, Constants.R_REMOTES + REMOTE + "/" + Constants.HEAD);
+        }
+        String destination = ref.startsWith(Constants.R_HEADS)
+                ? Constants.R_REMOTES + REMOTE + "/" + ref.substring(Constants.R_HEADS.length())
+                : ref;
+        return new RefSpec().setForceUpdate(true).setSourceDestination(ref, destination);
+    }
+
+    /**
+     * Fetch the repository, or wait for the fetch in progress of the same ref spec.
+     *
+     * @param refSpec what to fetch, or null for the ref specs of the remote.
+     */
+    private void fetch(String hash, Repository repository, RefSpec refSpec) throws IOException, GitAPIException {
+        String key = refSpec == null ? hash : hash + " " + refSpec;
+        CompletableFuture<Void> fetch = new CompletableFuture<>();
+        CompletableFuture<Void> pending = fetches.putIfAbsent(key, fetch);
+        if (pending != null) {
+            try {
+                pending.join();
+                return;
+            } catch (CompletionException ce) {
+                if (ce.getCause() instanceof GitAPIException) {
+                    throw (GitAPIException) ce.getCause();
+                }
+                if (ce.getCause() instanceof IOException) {
+                    throw (IOException) ce.getCause();
+                }
+                throw ce;
+            }
+        }
+
+        try {
+            // Callers that arrive while waiting share this fetch.
+            Long lastFetch = lastFetches.get(key);
+            long wait = lastFetch == null ? 0 : fetchDebounce - (System.nanoTime() - lastFetch);
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            lastFetches.put(key, System.nanoTime());
+            fetchCount.incrementAndGet();
+            fetchCommand(repository, refSpec).call();
+            fetch.complete(null);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("interrupted before fetching");
+            fetch.completeExceptionally(interrupted);
+            throw interrupted;
+        } catch (GitAPIException | RuntimeException | Error e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            fetches.remove(key, fetch);
+        }
+    }
+
+    private FetchCommand fetchCommand(Repository repository, RefSpec refSpec) {
+        FetchCommand command = Git.wrap(repository).fetch().setRemote(REMOTE);
+        if (refSpec != null) {
+            command.setRefSpecs(refSpec).setTagOpt(TagOpt.NO_TAGS);
+        }
+        authenticate(command);
+        return command;
     }
 
     /**
@@ -81,8 +282,12 @@ public class GitStore {
         return command;
     }
 
-    private Repository initializeRepository(String hashPath, URI remote) throws IOException, GitAPIException {
-        Path repositoryPath = Path.of(config.get("github.path").asString().get());
+    private Path getRepositoryPath() {
+        return Path.of(config.get("github.path").asString().get());
+    }
+
+    private void initializeRepository(String hashPath, URI remote, String ref) throws IOException, GitAPIException {
+        Path repositoryPath = getRepositoryPath();
 
         // Create the file
         File hashFile = repositoryPath.resolve(hashPath).toFile();
@@ -100,21 +305,132 @@ public class GitStore {
             );
         }
 
-        // Setup repository only the first time.
-        if (!hashFile.toPath().resolve(GIT_FOLDER).toFile().exists()) {
+        // Setup repository until it is initialized. Bare repositories that do not join a pool are fetched by get.
+        if (isInitialized(hashFile)) {
+            return;
+        }
+        Path seed = getSeed(hashPath, remote);
+        boolean hasWorkTree = hashFile.toPath().resolve(GIT_FOLDER).toFile().exists();
+        if (bare && !hasWorkTree) {
+            // Every step can be done again: init keeps an existing repository and join moves what is left.
+            try (Git git = Git.init().setBare(true).setDirectory(hashFile).call()) {
+                StoredConfig repositoryConfig = git.getRepository().getConfig();
+                repositoryConfig.setString("remote", REMOTE, "url", remote.toASCIIString());
+                repositoryConfig.save();
+            }
+            if (pools != null) {
+                pools.prepare(hashFile);
+            }
+            if (seed != null || pools != null) {
+                try (Repository repository = openRepository(hashPath)) {
+                    if (seed != null) {
+                        seedRepository(repository, seed);
+                    }
+                    if (pools != null) {
+                        // The first fetch only downloads the objects the pools and the seed do not have.
+                        fetchCommand(repository, toRefSpec(ref)).call();
+                    }
+                }
+            }
+            if (pools != null) {
+                pools.join(hashPath, hashFile);
+            }
+        } else if (isRepository(hashFile)) {
+            // Clones made before the mark existed. A clone that fails removes what it wrote, and get fetches what
+            // is missing.
+            log.debug("marking the existing clone {} as initialized", hashFile);
+        } else if (seed != null) {
+            // The remote is fetched by get.
+            try (Git git = Git.cloneRepository()
+                    .setURI(seed.toUri().toString())
+                    .setCloneAllBranches(true)
+                    .setDirectory(hashFile)
+                    .call()) {
+                StoredConfig repositoryConfig = git.getRepository().getConfig();
+                repositoryConfig.setString("remote", REMOTE, "url", remote.toASCIIString());
+                repositoryConfig.save();
+            }
+        } else {
             CloneCommand cloneCall = Git.cloneRepository()
                     .setURI(remote.toASCIIString())
                     .setCloneAllBranches(true)
                     .setDirectory(hashFile);
-            return authenticate(cloneCall).call().getRepository();
+            // The repository is opened again through the cache.
+            authenticate(cloneCall).call().close();
+        }
+        Files.createFile(getGitDirectory(hashFile).resolve(INITIALIZED_FILE));
+    }
+
+    /**
+     * Return the folder of the repository that contains its config and objects.
+     */
+    private static Path getGitDirectory(File hashFile) {
+        Path workTreeGitDirectory = hashFile.toPath().resolve(GIT_FOLDER);
+        return Files.isDirectory(workTreeGitDirectory) ? workTreeGitDirectory : hashFile.toPath();
+    }
+
+    private static boolean isInitialized(File hashFile) {
+        return isRepository(hashFile) && Files.exists(getGitDirectory(hashFile).resolve(INITIALIZED_FILE));
+    }
+
+    /**
+     * Return the bundle or mirror the repository can be seeded from, or null.
+     */
+    private Path getSeed(String hash, URI remote) {
+        Path seed = seeds.get(hash);
+        if (seed != null && !Files.exists(seed)) {
+            log.warn("the seed {} of {} does not exist, cloning from the remote", seed, remote);
+            return null;
+        }
+        return seed;
+    }
+
+    /**
+     * Fetch the branches of a bundle or mirror as the branches of the remote.
+     */
+    private static void seedRepository(Repository repository, Path seed) throws GitAPIException {
+        Git.wrap(repository).fetch()
+                .setRemote(seed.toUri().toString())
+                .setRefSpecs(new RefSpec().setForceUpdate(true).setSourceDestination(
+                        Constants.R_HEADS + "*", Constants.R_REMOTES + REMOTE + "/*"))
+                .setTagOpt(TagOpt.NO_TAGS)
+                .call();
+    }
+
+    /**
+     * Return true if the folder is a clone with a work tree or a bare repository.
+     */
+    private static boolean isRepository(File hashFile) {
+        return hashFile.toPath().resolve(GIT_FOLDER).toFile().exists()
+                || RepositoryCache.FileKey.isGitRepository(hashFile, FS.DETECTED);
+    }
+
+    /**
+     * Open an existing clone.
+     */
+    private Repository openRepository(String hash) throws IOException {
+        // Ids come from requests.
+        File hashFile = getRepositoryPath().resolve(hash).toFile();
+        if (!HASH.matcher(hash).matches() || !isRepository(hashFile)) {
+            throw new RepositoryNotFoundException(hashFile);
+        }
+        FileRepositoryBuilder builder = new FileRepositoryBuilder();
+        if (hashFile.toPath().resolve(GIT_FOLDER).toFile().exists()) {
+            builder.setWorkTree(hashFile);
         } else {
-            FileRepositoryBuilder builder = new FileRepositoryBuilder();
-            return builder.setWorkTree(hashFile).setup().build();
+            builder.setGitDir(hashFile);
         }
+        return builder.setup().build();
     }
 
+    /**
+     * Read a blob of a repository.
+     *
+     * @throws RepositoryNotFoundException if the repository has not been cloned.
+     */
     public byte[] getBlob(String repositoryId, String blobId) throws IOException {
-        Repository repository = hashRepoMap.get(repositoryId);
-        return repository.getObjectDatabase().open(ObjectId.fromString(blobId)).getBytes();
+        try (var repository = repositories.acquire(repositoryId, this::openRepository)) {
+            return repository.get().getObjectDatabase().open(ObjectId.fromString(blobId)).getBytes();
+        }
     }
 }
@@ -1,42 +1,118 @@
 package no.ssb.dapla.blueprint.neo4j;
 
+import no.ssb.dapla.blueprint.lineage.LineageGraph;
 import no.ssb.dapla.blueprint.neo4j.model.Commit;
 import no.ssb.dapla.blueprint.neo4j.model.CommittedFile;
 import no.ssb.dapla.blueprint.neo4j.model.Notebook;
 import no.ssb.dapla.blueprint.neo4j.model.Repository;
+import no.ssb.dapla.blueprint.neo4j.projection.CommitRow;
+import no.ssb.dapla.blueprint.neo4j.projection.FileRow;
 import org.neo4j.ogm.session.Session;
 import org.neo4j.ogm.session.SessionFactory;
+import org.neo4j.ogm.transaction.Transaction;
 
 import java.net.URI;
+import java.time.Instant;
+import java.time.temporal.TemporalAccessor;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
+ * Access to the notebook graph.
+ * <p>
+ * Every operation opens its own session and runs in a single read-only or read-write transaction, so the store is
+ * thread safe and the entities it returns are detached: nothing is kept in memory between operations.
+ * <p>
  * TODO: Evaluate https://neo4j-contrib.github.io/cypher-dsl
  */
 public class NotebookStore {
 
-    private final Session session;
+    /**
+     * The constraints and indexes, by name. Concurrent MERGE statements only match each other's nodes if the keys
+     * are unique.
+     * <p>
+     * IF NOT EXISTS needs Neo4j 4.1, so the existing names are checked instead.
+     */
+    private static final Map<String, String> SCHEMA = Map.of(
+            "repository_id", "CREATE CONSTRAINT repository_id ON (n:Repository) ASSERT n.id IS UNIQUE",
+            "commit_id", "CREATE CONSTRAINT commit_id ON (n:Commit) ASSERT n.id IS UNIQUE",
+            "notebook_blob_id", "CREATE CONSTRAINT notebook_blob_id ON (n:Notebook) ASSERT n.blobId IS UNIQUE",
+            "dataset_path", "CREATE CONSTRAINT dataset_path ON (n:Dataset) ASSERT n.path IS UNIQUE"
+    );
+
+    /**
+     * The columns of the commit rows, see {@link #toCommitRow(Map)}.
+     */
+    private static final String COMMIT_COLUMNS = """
+            commit.id AS id, commit.authorName AS authorName, commit.authorEmail AS authorEmail,
+            commit.authoredAt AS authoredAt, commit.committerName AS committerName,
+            commit.committerEmail AS committerEmail, commit.committedAt AS committedAt,
+            commit.message AS message""";
+
+    private final SessionFactory factory;
+    private final CommitWriter writer = new CommitWriter();
 
+    /**
+     * Create a store. The database is not used until the first operation, see {@link #createSchema()}.
+     */
     public NotebookStore(SessionFactory factory) {
-        this.session = Objects.requireNonNull(factory).openSession();
+        this.factory = Objects.requireNonNull(factory);
     }
 
-    public NotebookStore(Session session) {
-        this.session = Objects.requireNonNull(session);
+    /**
+     * Create the constraints and indexes of the graph that do not exist.
+     */
+    public void createSchema() {
+        Set<String> existing = read(session -> {
+            Set<String> names = new HashSet<>();
+            // Constraints are backed by an index of the same name, but both are listed to be sure.
+            session.query("CALL db.constraints() YIELD name RETURN name", Map.of())
+                    .forEach(row -> names.add((String) row.get("name")));
+            session.query("CALL db.indexes() YIELD name RETURN name", Map.of())
+                    .forEach(row -> names.add((String) row.get("name")));
+            return names;
+        });
+        // Schema changes cannot be mixed with other statements.
+        SCHEMA.forEach((name, statement) -> {
+            if (!existing.contains(name)) {
+                write(session -> session.query(statement, Map.of()));
+            }
+        });
+    }
+
+    private <T> T read(Function<Session, T> work) {
+        return execute(Transaction.Type.READ_ONLY, work);
+    }
+
+    private void write(Consumer<Session> work) {
+        execute(Transaction.Type.READ_WRITE, session -> {
+            work.accept(session);
+            return null;
+        });
+    }
+
+    private <T> T execute(Transaction.Type type, Function<Session, T> work) {
+        Session session = factory.openSession();
+        try (Transaction transaction = session.beginTransaction(type)) {
+            T result = work.apply(session);
+            transaction.commit();
+            return result;
+        }
     }
 
     public void addNotebook(Notebook notebook) {
-        session.save(notebook);
+        write(session -> session.save(notebook));
     }
 
     public void purgeDatabase() {
-        session.purgeDatabase();
+        write(Session::purgeDatabase);
     }
 
     @Deprecated
     public List<Notebook> getNotebooks() {
-        return new ArrayList<>(session.loadAll(Notebook.class));
+        return read(session -> new ArrayList<>(session.loadAll(Notebook.class)));
     }
 
     @Deprecated
@@ -46,7 +122,7 @@ public class NotebookStore {
 
     @Deprecated
     public List<Notebook> getNotebooks(String revisionId, Boolean diff) {
-        var commit = session.load(Commit.class, revisionId);
+        var commit = getCommit(revisionId);
         Set<CommittedFile> files = new HashSet<>();
         files.addAll(commit.getCreates());
         files.addAll(commit.getUpdates());
@@ -56,11 +132,11 @@ public class NotebookStore {
 
     @Deprecated
     public Commit getCommit(String commitId) {
-        return session.load(Commit.class, commitId);
+        return read(session -> session.load(Commit.class, commitId));
     }
 
     public Notebook getNotebook(String repositoryId, String revisionId, String blobId) {
-        return session.queryForObject(Notebook.class, """
+        return read(session -> session.queryForObject(Notebook.class, """
                 MATCH (repository:Repository {id: $repositoryId})
                 MATCH (commit:Commit {id: $commitId})
                 MATCH (notebook:Notebook { blobId: $blobId})
@@ -68,152 +144,287 @@ public class NotebookStore {
                 MATCH (commit)-[cn]-(notebook)
                 OPTIONAL MATCH (notebook)-[ds]->(dataset:Dataset)
                 RETURN repository, rc, commit, cn, notebook, ds, dataset
-                """, Map.of("repositoryId", repositoryId, "commitId", revisionId, "blobId", blobId));
+                """, Map.of("repositoryId", repositoryId, "commitId", revisionId, "blobId", blobId)));
     }
 
     public Collection<Repository> getRepositories() {
-        return session.loadAll(Repository.class, 0);
+        return read(session -> session.loadAll(Repository.class, 0));
     }
 
     public Optional<Collection<Commit>> getCommits(String repositoryId) {
-        Repository repository = session.load(Repository.class, repositoryId, 0);
-        if (repository == null) {
-            return Optional.empty();
-        } else {
-            Iterable<Commit> commits = session.query(
-                    Commit.class, """
-                            MATCH (repository:Repository {id: $repositoryId})-[rc:CONTAINS]->(commit:Commit)
-                            RETURN repository, rc, commit ORDER BY commit.createdAt DESC
-                            """,
-                    Map.of("repositoryId", repositoryId)
-            );
-            ArrayList<Commit> result = new ArrayList<>();
-            commits.forEach(result::add);
-            return Optional.of(result);
+        return read(session -> {
+            Repository repository = session.load(Repository.class, repositoryId, 0);
+            if (repository == null) {
+                return Optional.empty();
+            } else {
+                Iterable<Commit> commits = session.query(
+                        Commit.class, """
+                                MATCH (repository:Repository {id: $repositoryId})-[rc:CONTAINS]->(commit:Commit)
+                                RETURN repository, rc, commit ORDER BY commit.committedAt DESC, commit.id DESC
+                                """,
+                        Map.of("repositoryId", repositoryId)
+                );
+                ArrayList<Commit> result = new ArrayList<>();
+                commits.forEach(result::add);
+                return Optional.of(result);
+            }
+        });
+    }
+
+    /**
+     * Return a page of the commits of a repository, the most recent first.
+     * <p>
+     * Commits are ordered by commit date and id. The page starts after the commit with the id after, or with the
+     * most recent commit if after is null; it is empty if the commit is not in the repository. Pages are read
+     * from the commits of the repository only, found from its unique id, and keep the commits after the given one
+     * instead of skipping rows. Commits without commit date are not listed.
+     */
+    public Optional<List<CommitRow>> getCommits(String repositoryId, int limit, String after) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
         }
+        return read(session -> {
+            if (!hasRepository(session, repositoryId)) {
+                return Optional.empty();
+            }
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("repositoryId", repositoryId);
+            parameters.put("limit", limit);
+            parameters.put("after", after);
+            Iterable<Map<String, Object>> rows = session.query((after == null ? """
+                    MATCH (:Repository {id: $repositoryId})-[:CONTAINS]->(commit:Commit)
+                    WHERE commit.committedAt IS NOT NULL
+                    RETURN %s ORDER BY commit.committedAt DESC, commit.id DESC LIMIT $limit
+                    """ : """
+                    MATCH (repository:Repository {id: $repositoryId})-[:CONTAINS]->(after:Commit {id: $after})
+                    MATCH (repository)-[:CONTAINS]->(commit:Commit)
+                    WHERE commit.committedAt <= after.committedAt
+                      AND (commit.committedAt < after.committedAt OR commit.id < after.id)
+                    RETURN %s ORDER BY commit.committedAt DESC, commit.id DESC LIMIT $limit
+                    """).formatted(COMMIT_COLUMNS), parameters).queryResults();
+            List<CommitRow> page = new ArrayList<>();
+            rows.forEach(row -> page.add(toCommitRow(row)));
+            return Optional.of(page);
+        });
     }
 
-    public Commit findOrCreateCommit(String id) {
-        var commit = session.load(Commit.class, id, 0);
-        if (commit == null) {
-            commit = new Commit(id);
-            session.save(commit);
+    /**
+     * Return the properties of a commit of a repository, without its files.
+     */
+    public Optional<CommitRow> getCommitRow(String repositoryId, String commitId) {
+        Iterable<Map<String, Object>> rows = read(session -> session.query("""
+                MATCH (:Repository {id: $repositoryId})-[:CONTAINS]->(commit:Commit {id: $commitId})
+                RETURN %s
+                """.formatted(COMMIT_COLUMNS), Map.of("repositoryId", repositoryId, "commitId", commitId)
+        ).queryResults());
+        Iterator<Map<String, Object>> iterator = rows.iterator();
+        return iterator.hasNext() ? Optional.of(toCommitRow(iterator.next())) : Optional.empty();
+    }
+
+    /**
+     * Return the files of a commit, in path order. The paths of the datasets are sorted.
+     * <p>
+     * The previous outputs of an updated file are those of the notebook it replaced, if that notebook is known.
+     * <p>
+     * Like {@link #getLineage(String, String)}, the files and the paths of their datasets are read with one flat
+     * projection; nothing is mapped by the OGM.
+     */
+    public Optional<List<FileRow>> getFiles(String repositoryId, String commitId) {
+        Iterable<Map<String, Object>> rows = read(session -> session.query("""
+                MATCH (repository:Repository {id: $repositoryId})-[:CONTAINS]->(commit:Commit {id: $commitId})
+                OPTIONAL MATCH (commit)-[file:CREATES|UPDATES|DELETES|UNCHANGED]->(notebook:Notebook)
+                OPTIONAL MATCH (previous:Notebook {blobId: file.previousBlobId})
+                RETURN type(file) AS change, file.path AS path, notebook.blobId AS blobId,
+                       [(notebook)-[:CONSUMES]->(dataset:Dataset) | dataset.path] AS inputs,
+                       [(notebook)-[:PRODUCES]->(dataset:Dataset) | dataset.path] AS outputs,
+                       [(previous)-[:PRODUCES]->(dataset:Dataset) | dataset.path] AS previousOutputs
+                ORDER BY path
+                """, Map.of("repositoryId", repositoryId, "commitId", commitId)
+        ).queryResults());
+
+        // No rows if the commit does not exist, a row without notebook if it is empty.
+        boolean found = false;
+        List<FileRow> files = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            found = true;
+            if (row.get("blobId") != null) {
+                List<String> inputs = toStrings(row.get("inputs"));
+                List<String> outputs = toStrings(row.get("outputs"));
+                List<String> previousOutputs = toStrings(row.get("previousOutputs"));
+                Collections.sort(inputs);
+                Collections.sort(outputs);
+                Collections.sort(previousOutputs);
+                files.add(new FileRow(FileRow.Change.valueOf((String) row.get("change")), (String) row.get("path"),
+                        (String) row.get("blobId"), inputs, outputs, previousOutputs));
+            }
         }
-        return commit;
+        return found ? Optional.of(files) : Optional.empty();
+    }
+
+    private static boolean hasRepository(Session session, String repositoryId) {
+        return session.query("""
+                MATCH (repository:Repository {id: $repositoryId})
+                RETURN repository.id
+                """, Map.of("repositoryId", repositoryId)
+        ).queryResults().iterator().hasNext();
+    }
+
+    private static CommitRow toCommitRow(Map<String, Object> row) {
+        return new CommitRow(
+                (String) row.get("id"),
+                (String) row.get("authorName"),
+                (String) row.get("authorEmail"),
+                toInstant(row.get("authoredAt")),
+                (String) row.get("committerName"),
+                (String) row.get("committerEmail"),
+                toInstant(row.get("committedAt")),
+                (String) row.get("message")
+        );
+    }
+
+    /**
+     * Dates are written as ISO-8601 strings.
+     */
+    private static Instant toInstant(Object value) {
+        if (value instanceof TemporalAccessor) {
+            return Instant.from((TemporalAccessor) value);
+        }
+        return value == null ? null : Instant.parse(value.toString());
+    }
+
+    /**
+     * Return the first of the given commits that has been parsed in the repository.
+     */
+    public Optional<String> findParsedCommit(String repositoryId, List<String> commitIds) {
+        Set<String> parsed = new HashSet<>();
+        read(session -> session.query(String.class, """
+                MATCH (repository:Repository {id: $repositoryId})-[:CONTAINS]->(commit:Commit)
+                WHERE commit.id IN $commitIds
+                RETURN commit.id
+                """, Map.of("repositoryId", repositoryId, "commitIds", commitIds)
+        )).forEach(parsed::add);
+        return commitIds.stream().filter(parsed::contains).findFirst();
+    }
+
+    public Commit findOrCreateCommit(String id) {
+        return execute(Transaction.Type.READ_WRITE, session -> {
+            var commit = session.load(Commit.class, id, 0);
+            if (commit == null) {
+                commit = new Commit(id);
+                session.save(commit);
+            }
+            return commit;
+        });
     }
 
     public Repository findOrCreateRepository(URI uri) {
         // TODO: Maybe use the URI as id and use a field with index for the id?
         var id = new Repository(uri).getId();
-        var commit = session.load(Repository.class, id, 0);
-        if (commit == null) {
-            commit = new Repository(uri);
-            session.save(commit);
-        }
-        return commit;
+        return execute(Transaction.Type.READ_WRITE, session -> {
+            var repository = session.load(Repository.class, id, 0);
+            if (repository == null) {
+                repository = new Repository(uri);
+                session.save(repository);
+            }
+            return repository;
+        });
+    }
+
+    /**
+     * Save a new commit of a repository.
+     * <p>
+     * Only the commit, its files and the <code>CONTAINS</code> relationship are written, in one transaction. The
+     * cost does not depend on the number of commits the repository already has, contrary to
+     * {@link #saveRepository(Repository)}. The repository is created if needed.
+     */
+    public void saveCommit(Repository repository, Commit commit) {
+        write(session -> writer.write(session, repository, commit));
     }
 
     public void saveRepository(Repository repository) {
-        session.save(repository);
+        write(session -> session.save(repository));
     }
 
     public void saveCommit(Commit commit) {
-        session.save(commit);
+        write(session -> session.save(commit));
     }
 
     /**
-     * Return a commit with all the notebook and datasets.
+     * Write a commit with its files, notebooks and datasets in one transaction.
+     * <p>
+     * Contrary to {@link #saveCommit(Commit)} the object graph is not diffed; everything is merged using a fixed
+     * number of bulk statements, which is much faster for commits with many files.
      */
-    public Optional<Commit> getCommit(String repositoryId, String commitId) {
-        Repository repository = session.load(Repository.class, repositoryId, 0);
-        if (repository == null) {
-            return Optional.empty();
-        } else {
-            Commit commit = session.queryForObject(
-                    Commit.class, """
-                            MATCH (repository:Repository {id: $repositoryId})-[r:CONTAINS]->(commit:Commit {id : $commitId})
-                            MATCH (commit)-[file]->(notebook:Notebook)
-                            OPTIONAL MATCH (notebook)-[ds]->(dataset:Dataset)
-                            RETURN repository, r, commit, file, notebook, ds, dataset ORDER BY file.path ASC
-                             """,
-                    Map.of("repositoryId", repositoryId, "commitId", commitId)
-            );
-            return Optional.ofNullable(commit);
-        }
+    public void writeCommit(Commit commit) {
+        write(session -> writer.write(session, commit));
     }
 
     /**
-     * Returns a commit a spanning tree of the notebook graph.
+     * Return a commit with all the notebook and datasets.
      */
-    public Optional<Commit> getDependencies(String repositoryId, String commitId) {
-        Commit commit = session.queryForObject(Commit.class, """
-                MATCH (repository:Repository {id: $repositoryId})-[rc:CONTAINS]->(commit:Commit {id: $commitId})
-                MATCH (commit)-[:CREATES|UPDATES|UNCHANGED]->(nb:Notebook)
-                CALL apoc.path.spanningTree(nb, {
-                  relationshipFilter: "PRODUCES>|<CONSUMES",
-                  minLevel: 1,
-                  maxLevel: -1
-                })
-                YIELD path
-                WITH nodes(path) as nbs, repository, rc, commit
-                UNWIND nbs as notebook
-                MATCH (commit:Commit)-[file:CREATES|UPDATES|UNCHANGED]->(notebook)
-                MATCH (notebook)-[nd:PRODUCES|CONSUMES]-(dataset:Dataset)
-                RETURN repository, rc, commit, file, notebook, nd, dataset            
-                """, Map.of("repositoryId", repositoryId, "commitId", commitId)
-        );
-        return Optional.ofNullable(commit);
+    public Optional<Commit> getCommit(String repositoryId, String commitId) {
+        return read(session -> {
+            Repository repository = session.load(Repository.class, repositoryId, 0);
+            if (repository == null) {
+                return Optional.empty();
+            } else {
+                Commit commit = session.queryForObject(
+                        Commit.class, """
+                                MATCH (repository:Repository {id: $repositoryId})-[r:CONTAINS]->(commit:Commit {id : $commitId})
+                                MATCH (commit)-[file]->(notebook:Notebook)
+                                OPTIONAL MATCH (notebook)-[ds]->(dataset:Dataset)
+                                RETURN repository, r, commit, file, notebook, ds, dataset ORDER BY file.path ASC
+                                 """,
+                        Map.of("repositoryId", repositoryId, "commitId", commitId)
+                );
+                return Optional.ofNullable(commit);
+            }
+        });
     }
 
     /**
-     * Return a all the notebooks that have a <b>forward</b> dependency to the given notebookId.
+     * Return the lineage of the notebooks of a commit.
      * <p>
-     * Dependencies are found by forming a spanning tree of notebook, following their inputs and outputs. Note that the
-     * result is encoded as a Commit.
+     * The notebooks and the paths of their datasets are read with one flat projection; nothing is mapped by the
+     * OGM. Traversals are then done in memory.
      */
-    public Optional<Commit> getForwardDependencies(String repositoryId, String commitId, String notebookId) {
-        Commit commit = session.queryForObject(Commit.class, """
-                MATCH (repository:Repository {id: $repositoryId})-[rc:CONTAINS]->(commit:Commit {id: $commitId})
-                MATCH (commit)-[:CREATES|UPDATES|UNCHANGED]->(nb:Notebook {blobId: $notebookId})
-                CALL apoc.path.spanningTree(nb, {
-                  relationshipFilter: "PRODUCES>|<CONSUMES",
-                  minLevel: 1,
-                  maxLevel: -1
-                })
-                YIELD path
-                WITH nodes(path) as nbs, repository, rc, commit
-                UNWIND nbs as notebook
-                MATCH (commit:Commit)-[file:CREATES|UPDATES|UNCHANGED]->(notebook)
-                MATCH (notebook)-[nd:PRODUCES|CONSUMES]-(dataset:Dataset)
-                RETURN repository, rc, commit, file, notebook, nd, dataset            
-                """, Map.of("repositoryId", repositoryId, "commitId", commitId, "notebookId", notebookId)
-        );
-        return Optional.ofNullable(commit);
+    public Optional<LineageGraph> getLineage(String repositoryId, String commitId) {
+        Iterable<Map<String, Object>> rows = read(session -> session.query("""
+                MATCH (repository:Repository {id: $repositoryId})-[:CONTAINS]->(commit:Commit {id: $commitId})
+                OPTIONAL MATCH (commit)-[file:CREATES|UPDATES|UNCHANGED]->(notebook:Notebook)
+                RETURN file.path AS path, notebook.blobId AS blobId,
+                       [(notebook)-[:CONSUMES]->(dataset:Dataset) | dataset.path] AS inputs,
+                       [(notebook)-[:PRODUCES]->(dataset:Dataset) | dataset.path] AS outputs
+                """, Map.of("repositoryId", repositoryId, "commitId", commitId)
+        ).queryResults());
+
+        // No rows if the commit does not exist, a row without notebook if it is empty.
+        boolean found = false;
+        LineageGraph.Builder builder = LineageGraph.builder();
+        for (Map<String, Object> row : rows) {
+            found = true;
+            if (row.get("blobId") != null) {
+                builder.addNotebook((String) row.get("path"), (String) row.get("blobId"),
+                        toStrings(row.get("inputs")), toStrings(row.get("outputs")));
+            }
+        }
+        return found ? Optional.of(builder.build()) : Optional.empty();
     }
 
     /**
-     * Return a all the notebooks that have a <b>backward</b> dependency to the given notebookId.
-     * <p>
-     * Dependencies are found by forming a spanning tree of notebook, following their inputs and outputs. Note that the
-     * result is encoded as a Commit.
+     * Lists can be returned as arrays or collections depending on the driver.
      */
-    public Optional<Commit> getBackwardDependencies(String repositoryId, String commitId, String notebookId) {
-        Commit commit = session.queryForObject(Commit.class, """
-                MATCH (repository:Repository {id: $repositoryId})-[rc:CONTAINS]->(commit:Commit {id: $commitId})
-                MATCH (commit)-[:CREATES|UPDATES|UNCHANGED]->(nb:Notebook {blobId: $notebookId})
-                CALL apoc.path.spanningTree(nb, {
-                  relationshipFilter: "<PRODUCES|CONSUMES>",
-                  minLevel: 1,
-                  maxLevel: -1
-                })
-                YIELD path
-                WITH nodes(path) as nbs, repository, rc, commit
-                UNWIND nbs as notebook
-                MATCH (commit:Commit)-[file:CREATES|UPDATES|UNCHANGED]->(notebook)
-                MATCH (notebook)-[nd:PRODUCES|CONSUMES]-(dataset:Dataset)
-                RETURN repository, rc, commit, file, notebook, nd, dataset            
-                """, Map.of("repositoryId", repositoryId, "commitId", commitId, "notebookId", notebookId)
-        );
-        return Optional.ofNullable(commit);
+    private static List<String> toStrings(Object value) {
+        List<String> strings = new ArrayList<>();
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                strings.add((String) element);
+            }
+        } else if (value instanceof Iterable) {
+            for (Object element : (Iterable<?>) value) {
+                strings.add((String) element);
+            }
+        }
+        return strings;
     }
 }
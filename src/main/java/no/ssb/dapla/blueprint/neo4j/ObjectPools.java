@@ -0,0 +1,158 @@
+package no.ssb.dapla.blueprint.neo4j;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.util.FS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Object databases shared by the repositories that have the same history, the forks and mirrors of a repository.
+ * <p>
+ * A pool is a bare repository in the <code>pools</code> folder, named after a root commit of its history.
+ * Repositories read the objects of their pool through <code>objects/info/alternates</code>, and the refs of the
+ * pools are sent as haves when they fetch, so that only the commits the pool does not have are downloaded. The
+ * commits of a repository are added to the pool when it joins, under <code>refs/members/&lt;hash&gt;/</code>.
+ * Pools are never garbage collected since the repositories that use them are not known to git.
+ */
+final class ObjectPools {
+
+    private static final Path POOLS_FOLDER = Path.of("pools");
+    private static final Pattern LOOSE_OBJECTS_FOLDER = Pattern.compile("[0-9a-f]{2}");
+
+    private final Path path;
+
+    ObjectPools(Path repositoryPath) {
+        this.path = repositoryPath.resolve(POOLS_FOLDER);
+    }
+
+    /**
+     * Use all the pools as alternates of a new repository, so that its first fetch only downloads the objects that
+     * no pool has.
+     */
+    synchronized void prepare(File directory) throws IOException {
+        List<Path> pools;
+        try (Stream<Path> folders = Files.exists(path) ? Files.list(path) : Stream.empty()) {
+            pools = folders.filter(folder -> RepositoryCache.FileKey.isGitRepository(folder.toFile(), FS.DETECTED))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        writeAlternates(directory, pools);
+    }
+
+    /**
+     * Move the objects of a repository to the pool of its history, creating the pool if needed.
+     * <p>
+     * The repository must not be open. Repositories without commits are left as they are.
+     */
+    synchronized void join(String hash, File directory) throws IOException, GitAPIException {
+        SortedSet<String> roots;
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(directory).setMustExist(true).build()) {
+            roots = findRoots(repository);
+        }
+        if (roots.isEmpty()) {
+            return;
+        }
+
+        // Histories with several roots use the first pool that exists.
+        Path poolPath = roots.stream().map(path::resolve).filter(Files::isDirectory).findFirst()
+                .orElse(path.resolve(roots.first()));
+        if (!Files.isDirectory(poolPath)) {
+            Files.createDirectories(path);
+            try (Git pool = Git.init().setBare(true).setDirectory(poolPath.toFile()).call()) {
+                StoredConfig poolConfig = pool.getRepository().getConfig();
+                poolConfig.setInt(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_AUTO, 0);
+                poolConfig.save();
+            }
+        }
+
+        // The pool only downloads what it does not have, locally.
+        try (Git pool = Git.open(poolPath.toFile())) {
+            pool.fetch()
+                    .setRemote(directory.toURI().toString())
+                    .setRefSpecs(new RefSpec("+" + Constants.R_REFS + "*:" + Constants.R_REFS + "members/" + hash + "/*"))
+                    .setTagOpt(TagOpt.NO_TAGS)
+                    .call();
+        }
+
+        // Everything the repository has is now in the pool.
+        writeAlternates(directory, List.of(poolPath));
+        deleteObjects(directory.toPath().resolve(Constants.OBJECTS));
+    }
+
+    private static SortedSet<String> findRoots(Repository repository) throws IOException {
+        SortedSet<String> roots = new TreeSet<>();
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            for (Ref ref : repository.getRefDatabase().getRefs()) {
+                if (ref.getObjectId() == null) {
+                    continue;
+                }
+                RevObject object = walk.peel(walk.parseAny(ref.getObjectId()));
+                if (object instanceof RevCommit) {
+                    walk.markStart((RevCommit) object);
+                }
+            }
+            for (RevCommit commit : walk) {
+                if (commit.getParentCount() == 0) {
+                    roots.add(commit.name());
+                }
+            }
+        }
+        return roots;
+    }
+
+    private static void writeAlternates(File directory, List<Path> pools) throws IOException {
+        // Relative, so that github.path can be moved.
+        Path objects = directory.toPath().toAbsolutePath().resolve(Constants.OBJECTS);
+        Path alternates = objects.resolve(Constants.INFO_ALTERNATES);
+        if (pools.isEmpty()) {
+            Files.deleteIfExists(alternates);
+            return;
+        }
+        Files.createDirectories(alternates.getParent());
+        Files.write(alternates, pools.stream()
+                .map(pool -> objects.relativize(pool.toAbsolutePath().resolve(Constants.OBJECTS)).toString())
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Delete the packs and loose objects of an object database.
+     */
+    private static void deleteObjects(Path objects) throws IOException {
+        List<Path> folders;
+        try (Stream<Path> files = Files.list(objects)) {
+            folders = files.filter(file -> file.getFileName().toString().equals("pack")
+                    || LOOSE_OBJECTS_FOLDER.matcher(file.getFileName().toString()).matches())
+                    .collect(Collectors.toList());
+        }
+        for (Path folder : folders) {
+            try (Stream<Path> files = Files.list(folder)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
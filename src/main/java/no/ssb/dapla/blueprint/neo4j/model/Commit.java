@@ -127,13 +127,21 @@ public class Commit {
     }
 
     public void addUpdate(Path path, Notebook notebook) {
-        this.updates.add(new UpdatedFile(this, path, notebook));
+        addUpdate(path, notebook, null);
     }
 
     public void addUpdate(String path, Notebook notebook) {
         addUpdate(Path.of(path), notebook);
     }
 
+    public void addUpdate(Path path, Notebook notebook, String previousBlobId) {
+        this.updates.add(new UpdatedFile(this, path, notebook, previousBlobId));
+    }
+
+    public void addUpdate(String path, Notebook notebook, String previousBlobId) {
+        addUpdate(Path.of(path), notebook, previousBlobId);
+    }
+
     public Set<DeletedFile> getDeletes() {
         return Collections.unmodifiableSet(deletes);
     }
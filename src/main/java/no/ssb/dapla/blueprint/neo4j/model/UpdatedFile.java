@@ -7,10 +7,24 @@ import java.nio.file.Path;
 @RelationshipEntity(type = "UPDATES")
 public class UpdatedFile extends CommittedFile {
 
+    /**
+     * The blob id of the file at the same path before the commit, or null if it is not known.
+     */
+    private String previousBlobId;
+
     private UpdatedFile() {
     }
 
     public UpdatedFile(Commit commit, Path path, Notebook notebook) {
+        this(commit, path, notebook, null);
+    }
+
+    public UpdatedFile(Commit commit, Path path, Notebook notebook, String previousBlobId) {
         super(commit, path, notebook);
+        this.previousBlobId = previousBlobId;
+    }
+
+    public String getPreviousBlobId() {
+        return previousBlobId;
     }
 }
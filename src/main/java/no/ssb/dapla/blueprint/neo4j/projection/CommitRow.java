@@ -0,0 +1,63 @@
+package no.ssb.dapla.blueprint.neo4j.projection;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * The properties of a commit, read from a flat projection without its files.
+ */
+public final class CommitRow {
+
+    private final String id;
+    private final String authorName;
+    private final String authorEmail;
+    private final Instant authoredAt;
+    private final String committerName;
+    private final String committerEmail;
+    private final Instant committedAt;
+    private final String message;
+
+    public CommitRow(String id, String authorName, String authorEmail, Instant authoredAt, String committerName,
+                     String committerEmail, Instant committedAt, String message) {
+        this.id = Objects.requireNonNull(id);
+        this.authorName = authorName;
+        this.authorEmail = authorEmail;
+        this.authoredAt = authoredAt;
+        this.committerName = committerName;
+        this.committerEmail = committerEmail;
+        this.committedAt = committedAt;
+        this.message = message;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    public String getAuthorEmail() {
+        return authorEmail;
+    }
+
+    public Instant getAuthoredAt() {
+        return authoredAt;
+    }
+
+    public String getCommitterName() {
+        return committerName;
+    }
+
+    public String getCommitterEmail() {
+        return committerEmail;
+    }
+
+    public Instant getCommittedAt() {
+        return committedAt;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
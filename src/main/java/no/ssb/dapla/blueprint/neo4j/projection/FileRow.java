@@ -0,0 +1,61 @@
+package no.ssb.dapla.blueprint.neo4j.projection;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A file of a commit with the paths of the datasets of its notebook, read from a flat projection.
+ */
+public final class FileRow {
+
+    private final Change change;
+    private final String path;
+    private final String blobId;
+    private final List<String> inputs;
+    private final List<String> outputs;
+    private final List<String> previousOutputs;
+
+    public FileRow(Change change, String path, String blobId, List<String> inputs, List<String> outputs,
+                   List<String> previousOutputs) {
+        this.change = Objects.requireNonNull(change);
+        this.path = Objects.requireNonNull(path);
+        this.blobId = Objects.requireNonNull(blobId);
+        this.inputs = List.copyOf(inputs);
+        this.outputs = List.copyOf(outputs);
+        this.previousOutputs = List.copyOf(previousOutputs);
+    }
+
+    public Change getChange() {
+        return change;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getBlobId() {
+        return blobId;
+    }
+
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    public List<String> getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * The paths of the datasets the file produced before the commit updated it, empty if not known.
+     */
+    public List<String> getPreviousOutputs() {
+        return previousOutputs;
+    }
+
+    /**
+     * What the commit did to the file, named after the relationship between the commit and the notebook.
+     */
+    public enum Change {
+        CREATES, UPDATES, DELETES, UNCHANGED
+    }
+}
@@ -4,17 +4,23 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -25,6 +31,8 @@ import java.util.stream.StreamSupport;
  */
 public class GitHelper {
 
+    private static final String NOTEBOOK_SUFFIX = ".ipynb";
+
     private final Repository repository;
 
     public GitHelper(Repository repository) {
@@ -46,6 +54,134 @@ public class GitHelper {
         }
     }
 
+    /**
+     * Return the notebooks of a commit with their blob id, mode and size.
+     * <p>
+     * The commit tree is walked once with a single reader and folders whose name is in ignores are not
+     * entered. The map is ordered like the tree.
+     */
+    public Map<Path, NotebookBlob> getNotebookBlobs(String revSpec, Set<String> ignores) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            return getNotebookBlobs(reader, revSpec, ignores);
+        }
+    }
+
+    private Map<Path, NotebookBlob> getNotebookBlobs(ObjectReader reader, String revSpec, Set<String> ignores)
+            throws IOException {
+        try (RevWalk walk = new RevWalk(reader); TreeWalk treeWalk = new TreeWalk(reader)) {
+            var commitId = repository.resolve(revSpec);
+            if (commitId == null) {
+                throw new IOException(String.format("could not find commit %s", revSpec));
+            }
+            treeWalk.addTree(walk.parseCommit(commitId).getTree());
+            treeWalk.setFilter(PathSuffixFilter.create(NOTEBOOK_SUFFIX));
+            treeWalk.setRecursive(false);
+
+            Map<Path, NotebookBlob> blobs = new LinkedHashMap<>();
+            while (treeWalk.next()) {
+                if (treeWalk.isSubtree()) {
+                    if (!ignores.contains(treeWalk.getNameString())) {
+                        treeWalk.enterSubtree();
+                    }
+                } else {
+                    var mode = treeWalk.getFileMode(0);
+                    if (FileMode.REGULAR_FILE.equals(mode) || FileMode.EXECUTABLE_FILE.equals(mode)) {
+                        var blobId = treeWalk.getObjectId(0);
+                        blobs.put(Path.of(treeWalk.getPathString()), new NotebookBlob(
+                                blobId, mode, reader.getObjectSize(blobId, Constants.OBJ_BLOB)));
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(blobs);
+        }
+    }
+
+    /**
+     * Return the notebooks that differ between two commits.
+     * <p>
+     * Both trees are walked together and the subtrees that are identical in both commits are skipped, so the cost
+     * depends on the size of the change rather than the size of the repository.
+     */
+    public NotebookDiff diffNotebooks(String oldRevSpec, String newRevSpec, Set<String> ignores) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader();
+             RevWalk walk = new RevWalk(reader);
+             TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(parseTree(walk, oldRevSpec));
+            treeWalk.addTree(parseTree(walk, newRevSpec));
+            treeWalk.setFilter(AndTreeFilter.create(TreeFilter.ANY_DIFF, PathSuffixFilter.create(NOTEBOOK_SUFFIX)));
+            treeWalk.setRecursive(false);
+
+            Map<Path, NotebookBlob> changed = new LinkedHashMap<>();
+            Set<Path> removed = new LinkedHashSet<>();
+            while (treeWalk.next()) {
+                if (treeWalk.isSubtree()) {
+                    if (!ignores.contains(treeWalk.getNameString())) {
+                        treeWalk.enterSubtree();
+                    }
+                } else {
+                    var path = Path.of(treeWalk.getPathString());
+                    var mode = treeWalk.getFileMode(1);
+                    if (FileMode.REGULAR_FILE.equals(mode) || FileMode.EXECUTABLE_FILE.equals(mode)) {
+                        var blobId = treeWalk.getObjectId(1);
+                        changed.put(path, new NotebookBlob(blobId, mode,
+                                reader.getObjectSize(blobId, Constants.OBJ_BLOB)));
+                    } else {
+                        removed.add(path);
+                    }
+                }
+            }
+            return new NotebookDiff(changed, removed);
+        }
+    }
+
+    private RevTree parseTree(RevWalk walk, String revSpec) throws IOException {
+        var commitId = repository.resolve(revSpec);
+        if (commitId == null) {
+            throw new IOException(String.format("could not find commit %s", revSpec));
+        }
+        return walk.parseCommit(commitId).getTree();
+    }
+
+    /**
+     * Return the first parents of a commit, nearest first, up to max commits.
+     */
+    public List<String> getFirstParents(String commitId, int max) throws IOException {
+        List<String> parents = new ArrayList<>();
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit commit = walk.parseCommit(repository.resolve(commitId));
+            while (parents.size() < max && commit.getParentCount() > 0) {
+                commit = walk.parseCommit(commit.getParent(0));
+                parents.add(commit.getName());
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Visit all the notebooks of a commit, reading them directly from the object database.
+     * <p>
+     * Nothing is written to the work tree so this also works with bare repositories.
+     *
+     * @see #getNotebookBlobs(String, Set)
+     */
+    public void walkNotebooks(String revSpec, Set<String> ignores, NotebookVisitor visitor) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader()) {
+            for (Map.Entry<Path, NotebookBlob> entry : getNotebookBlobs(reader, revSpec, ignores).entrySet()) {
+                var blobId = entry.getValue().getId();
+                try (InputStream content = reader.open(blobId, Constants.OBJ_BLOB).openStream()) {
+                    visitor.visit(entry.getKey(), blobId.getName(), content);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the content of a notebook blob. Safe to call from several threads.
+     */
+    public InputStream open(NotebookBlob blob) throws IOException {
+        return repository.open(blob.getId(), Constants.OBJ_BLOB).openStream();
+    }
+
     public void checkout(String commitId) throws GitAPIException {
         try (Git git = Git.wrap(repository)) {
             git.checkout().setName(commitId).call();
@@ -90,7 +226,12 @@ public class GitHelper {
                 .setShowNameAndStatusOnly(true);
         try {
             for (DiffEntry diffEntry : diffCommand.call()) {
-                diffMap.put(diffEntry.getNewPath(), diffEntry);
+                // The new path of deleted files is /dev/null.
+                if (diffEntry.getChangeType() == DiffEntry.ChangeType.DELETE) {
+                    diffMap.put(diffEntry.getOldPath(), diffEntry);
+                } else {
+                    diffMap.put(diffEntry.getNewPath(), diffEntry);
+                }
             }
         } catch (GitAPIException e) {
             throw new IOException(e.getMessage(), e);
@@ -110,4 +251,78 @@ public class GitHelper {
             }
         }
     }
+
+    /**
+     * Callback used by {@link #walkNotebooks(String, Set, NotebookVisitor)}.
+     */
+    @FunctionalInterface
+    public interface NotebookVisitor {
+
+        /**
+         * @param path    the path of the notebook, relative to the root of the repository.
+         * @param blobId  the id of the notebook blob.
+         * @param content the content of the notebook. Closed once the method returns.
+         */
+        void visit(Path path, String blobId, InputStream content) throws IOException;
+    }
+
+    /**
+     * The notebooks that differ between two commits.
+     */
+    public static final class NotebookDiff {
+
+        private final Map<Path, NotebookBlob> changed;
+        private final Set<Path> removed;
+
+        NotebookDiff(Map<Path, NotebookBlob> changed, Set<Path> removed) {
+            this.changed = Collections.unmodifiableMap(changed);
+            this.removed = Collections.unmodifiableSet(removed);
+        }
+
+        /**
+         * The notebooks that were added or modified, as found in the new commit.
+         */
+        public Map<Path, NotebookBlob> getChanged() {
+            return changed;
+        }
+
+        /**
+         * The paths of the notebooks of the old commit that are not in the new commit.
+         */
+        public Set<Path> getRemoved() {
+            return removed;
+        }
+    }
+
+    /**
+     * A notebook entry of a commit tree.
+     */
+    public static final class NotebookBlob {
+
+        private final ObjectId id;
+        private final FileMode mode;
+        private final long size;
+
+        public NotebookBlob(ObjectId id, FileMode mode, long size) {
+            this.id = Objects.requireNonNull(id);
+            this.mode = Objects.requireNonNull(mode);
+            this.size = size;
+        }
+
+        public ObjectId getId() {
+            return id;
+        }
+
+        public String getBlobId() {
+            return id.getName();
+        }
+
+        public FileMode getMode() {
+            return mode;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
 }
@@ -1,69 +1,140 @@
 package no.ssb.dapla.blueprint.parser;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import no.ssb.dapla.blueprint.neo4j.model.Dataset;
 import no.ssb.dapla.blueprint.neo4j.model.Notebook;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+/**
+ * Extracts the inputs and outputs of a notebook.
+ * <p>
+ * The notebook is scanned token by token; only the <code>cells[].source</code> arrays are read. Everything
+ * else (outputs, attachments, metadata etc.) is skipped without being materialized so that notebooks with large
+ * embedded outputs do not end up on the heap.
+ */
 public class NotebookProcessor {
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Version of the extraction rules. Bump it whenever a notebook can give different datasets.
+     */
+    public static final int VERSION = 1;
+
+    private final JsonFactory factory = new JsonFactory();
 
     public Notebook process(String path, String notebookPath) throws IOException {
         return process(Path.of(path), Path.of(notebookPath));
     }
 
     public Notebook process(Path path, Path notebookPath) throws IOException {
+        try (InputStream content = Files.newInputStream(path.resolve(notebookPath))) {
+            return process(content);
+        }
+    }
 
-        JsonNode jsonNode = mapper.readTree(path.resolve(notebookPath).toFile());
-
-        Notebook notebook = new Notebook();
-
-        JsonNode cells = jsonNode.get("cells");
-        processCells(notebook, cells);
+    /**
+     * Process the notebook read from the given stream. The stream is not closed.
+     */
+    public Notebook process(InputStream content) throws IOException {
+        try (JsonParser parser = factory.createParser(content)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
 
-        return notebook;
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("notebook was not an object");
+            }
 
+            Notebook notebook = new Notebook();
+            boolean hasCells = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("cells".equals(field)) {
+                    processCells(notebook, parser);
+                    hasCells = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!hasCells) {
+                throw new IOException("notebook did not contain any cells");
+            }
+            return notebook;
+        }
     }
 
-    private void processCells(Notebook notebook, JsonNode cells) throws IOException {
-        if (!cells.isArray()) {
+    private void processCells(Notebook notebook, JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
             throw new IOException("cells was not an array");
         }
-        for (JsonNode cell : cells) {
-            JsonNode sources = cell.get("source");
-            processSources(notebook, sources);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                throw new IOException("cell was not an object");
+            }
+            List<String> source = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("source".equals(field)) {
+                    source = readSource(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (source == null) {
+                throw new IOException("cell did not contain any source");
+            }
+            processSources(notebook, source);
         }
     }
 
-    private void processSources(Notebook notebook, JsonNode source) throws IOException {
-        if (!source.isArray()) {
+    private List<String> readSource(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
             throw new IOException("source was not an array");
         }
-        if (source.size() == 0) {
+        List<String> lines = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken().isStructStart()) {
+                // Mirrors JsonNode#asText(), containers have no text value.
+                parser.skipChildren();
+                lines.add("");
+            } else if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                lines.add("null");
+            } else {
+                lines.add(parser.getText());
+            }
+        }
+        return lines;
+    }
+
+    private void processSources(Notebook notebook, List<String> source) {
+        if (source.isEmpty()) {
             return;
         }
 
         Set<Dataset> set = null;
 
         // check first line for input or output magic
-        String firstLine = source.get(0).asText().trim();
+        String firstLine = source.get(0).trim();
         if ("%%input".equals(firstLine) || "%%output".equals(firstLine)) {
             set = "%%input".equals(firstLine) ? notebook.getInputs() : notebook.getOutputs();
             // skip first line
             for (int i = 1; i < source.size(); i++) {
-                String dataset = source.get(i).asText().trim();
+                String dataset = source.get(i).trim();
                 if (dataset.length() > 0) {
                     set.add(new Dataset(dataset));
                 }
             }
         } else {
-            for (JsonNode line : source) {
-                String textLine = line.asText().trim();
+            for (String line : source) {
+                String textLine = line.trim();
                 // Ignore regular code.
                 if (!(textLine.startsWith("#"))) {
                     if (set != null) {
@@ -0,0 +1,200 @@
+package no.ssb.dapla.blueprint.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import no.ssb.dapla.blueprint.neo4j.model.Dataset;
+import no.ssb.dapla.blueprint.neo4j.model.Notebook;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of the inputs and outputs of notebooks, keyed by git blob id.
+ * <p>
+ * The datasets of a notebook only depend on its content, so a blob never needs to be parsed twice. The results
+ * are kept in a bounded in-memory LRU and, if a directory is given, on disk so that they survive restarts.
+ */
+public class ParseResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ParseResultCache.class);
+
+    private static final String INPUTS = "inputs";
+    private static final String OUTPUTS = "outputs";
+
+    private final JsonFactory factory = new JsonFactory();
+    private final Map<String, ParseResult> memory;
+    private final Path directory;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    /**
+     * @param maxSize   the maximum number of results kept in memory.
+     * @param directory the directory of the on-disk tier, or null to only cache in memory.
+     * @param registry  the registry the hit and miss counters are registered with.
+     */
+    public ParseResultCache(int maxSize, Path directory, MetricRegistry registry) {
+        this.memory = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ParseResult> eldest) {
+                return size() > maxSize;
+            }
+        });
+        // Results depend on how notebooks are processed.
+        this.directory = directory == null ? null : directory.resolve("v" + NotebookProcessor.VERSION);
+        this.memoryHits = registry.counter("parser.cache.memory.hits");
+        this.diskHits = registry.counter("parser.cache.disk.hits");
+        this.misses = registry.counter("parser.cache.misses");
+    }
+
+    public Optional<ParseResult> get(String blobId) {
+        ParseResult result = memory.get(blobId);
+        if (result != null) {
+            memoryHits.inc();
+            return Optional.of(result);
+        }
+        if (directory != null) {
+            result = readFromDisk(blobId);
+            if (result != null) {
+                diskHits.inc();
+                memory.put(blobId, result);
+                return Optional.of(result);
+            }
+        }
+        misses.inc();
+        return Optional.empty();
+    }
+
+    public void put(String blobId, Notebook notebook) {
+        ParseResult result = new ParseResult(notebook);
+        memory.put(blobId, result);
+        if (directory != null) {
+            writeToDisk(blobId, result);
+        }
+    }
+
+    private Path blobPath(String blobId) {
+        // Same fan out as the git object database.
+        return directory.resolve(blobId.substring(0, 2)).resolve(blobId.substring(2));
+    }
+
+    private ParseResult readFromDisk(String blobId) {
+        Path path = blobPath(blobId);
+        try (InputStream input = Files.newInputStream(path); JsonParser parser = factory.createParser(input)) {
+            List<String> inputs = List.of();
+            List<String> outputs = List.of();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("result was not an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (INPUTS.equals(field)) {
+                    inputs = readStrings(parser);
+                } else if (OUTPUTS.equals(field)) {
+                    outputs = readStrings(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new ParseResult(inputs, outputs);
+        } catch (NoSuchFileException nsfe) {
+            return null;
+        } catch (IOException ioe) {
+            log.warn("ignoring unreadable cache entry {}", path, ioe);
+            return null;
+        }
+    }
+
+    private List<String> readStrings(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IOException("expected an array");
+        }
+        List<String> strings = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.VALUE_STRING) {
+            strings.add(parser.getText());
+        }
+        return strings;
+    }
+
+    private void writeToDisk(String blobId, ParseResult result) {
+        Path path = blobPath(blobId);
+        try {
+            Files.createDirectories(path.getParent());
+            // Write next to the target and move so that concurrent readers never see partial entries.
+            Path temporary = Files.createTempFile(path.getParent(), blobId, ".tmp");
+            try (OutputStream output = Files.newOutputStream(temporary);
+                 JsonGenerator generator = factory.createGenerator(output)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart(INPUTS);
+                for (String dataset : result.getInputs()) {
+                    generator.writeString(dataset);
+                }
+                generator.writeEndArray();
+                generator.writeArrayFieldStart(OUTPUTS);
+                for (String dataset : result.getOutputs()) {
+                    generator.writeString(dataset);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ioe) {
+            log.warn("could not write cache entry {}", path, ioe);
+        }
+    }
+
+    /**
+     * The datasets of a notebook.
+     */
+    public static final class ParseResult {
+
+        private final List<String> inputs;
+        private final List<String> outputs;
+
+        ParseResult(List<String> inputs, List<String> outputs) {
+            this.inputs = List.copyOf(inputs);
+            this.outputs = List.copyOf(outputs);
+        }
+
+        ParseResult(Notebook notebook) {
+            this(toStrings(notebook.getInputs()), toStrings(notebook.getOutputs()));
+        }
+
+        private static List<String> toStrings(Set<Dataset> datasets) {
+            return datasets.stream().map(Dataset::getPath).map(Path::toString).collect(Collectors.toList());
+        }
+
+        public List<String> getInputs() {
+            return inputs;
+        }
+
+        public List<String> getOutputs() {
+            return outputs;
+        }
+
+        /**
+         * Create a new notebook with the datasets of this result.
+         */
+        public Notebook toNotebook(String blobId) {
+            Notebook notebook = new Notebook(blobId);
+            inputs.forEach(input -> notebook.addInputs(new Dataset(input)));
+            outputs.forEach(output -> notebook.addOutputs(new Dataset(output)));
+            return notebook;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package no.ssb.dapla.blueprint.parser;
 
+import no.ssb.dapla.blueprint.lineage.LineageGraph;
+import no.ssb.dapla.blueprint.lineage.LineageSnapshots;
 import no.ssb.dapla.blueprint.neo4j.NotebookStore;
+import no.ssb.dapla.blueprint.neo4j.model.Commit;
+import no.ssb.dapla.blueprint.neo4j.model.Dataset;
 import no.ssb.dapla.blueprint.neo4j.model.Notebook;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
@@ -14,10 +18,18 @@ import picocli.CommandLine.Option;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static no.ssb.dapla.blueprint.BlueprintApplication.initNeo4jDriver;
 import static picocli.CommandLine.Parameters;
@@ -26,16 +38,63 @@ public final class Parser {
 
     private static final Logger log = LoggerFactory.getLogger(Parser.class);
 
+    /**
+     * How far back to look for an already parsed commit to parse incrementally from.
+     */
+    private static final int MAX_ANCESTORS = 50;
+
     private final NotebookFileVisitor visitor;
     private final NotebookProcessor processor;
     private final GitHelper gitHelper;
     private final NotebookStore notebookStore;
-
-    public Parser(Repository repository, NotebookStore store, Set<String> ignores) {
+    private final Set<String> ignores;
+    private final Executor executor;
+    private final ParseResultCache cache;
+    private final LineageSnapshots snapshots;
+
+    /**
+     * Create a parser that processes the notebooks of a commit with the given executor.
+     * <p>
+     * The notebooks are still added to the commit in a deterministic order, whatever the executor. Notebooks
+     * found in the cache are neither read nor processed; the cache can be null. If snapshots is not null, a
+     * snapshot of the lineage of each parsed commit is written once it is saved.
+     */
+    public Parser(Repository repository, NotebookStore store, Set<String> ignores, Executor executor,
+                  ParseResultCache cache, LineageSnapshots snapshots) {
         this.gitHelper = new GitHelper(Objects.requireNonNull(repository));
+        this.ignores = Set.copyOf(ignores);
         this.visitor = new NotebookFileVisitor(ignores);
         this.processor = new NotebookProcessor();
         this.notebookStore = Objects.requireNonNull(store);
+        this.executor = Objects.requireNonNull(executor);
+        this.cache = cache;
+        this.snapshots = snapshots;
+    }
+
+    public Parser(Repository repository, NotebookStore store, Set<String> ignores, Executor executor,
+                  ParseResultCache cache) {
+        this(repository, store, ignores, executor, cache, null);
+    }
+
+    public Parser(Repository repository, NotebookStore store, Set<String> ignores, Executor executor) {
+        this(repository, store, ignores, executor, null);
+    }
+
+    public Parser(Repository repository, NotebookStore store, Set<String> ignores) {
+        this(repository, store, ignores, Runnable::run);
+    }
+
+    public Parser(Repository repository, NotebookStore store, Executor executor) {
+        this(repository, store, Set.of(".git"), executor);
+    }
+
+    public Parser(Repository repository, NotebookStore store, Executor executor, ParseResultCache cache) {
+        this(repository, store, Set.of(".git"), executor, cache);
+    }
+
+    public Parser(Repository repository, NotebookStore store, Executor executor, ParseResultCache cache,
+                  LineageSnapshots snapshots) {
+        this(repository, store, Set.of(".git"), executor, cache, snapshots);
     }
 
     public Parser(Repository repository, NotebookStore store) {
@@ -50,17 +109,38 @@ public final class Parser {
         }
 
         var sessionFactory = initNeo4jDriver(options.host.toString(), options.user, options.password, 10);
-        var repository = new FileRepositoryBuilder()
-                .setWorkTree(options.root).setup().build();
+        var repositoryBuilder = new FileRepositoryBuilder();
+        if (options.noCheckout) {
+            // ROOT can be a work tree or a bare repository.
+            repositoryBuilder.findGitDir(options.root);
+        } else {
+            repositoryBuilder.setWorkTree(options.root);
+        }
+        var repository = repositoryBuilder.setup().build();
         HashSet<String> ignores = new HashSet<>(options.ignores);
         ignores.add(".git");
 
-        Parser parser = new Parser(repository, new NotebookStore(sessionFactory), ignores);
+        NotebookStore store = new NotebookStore(sessionFactory);
+        store.createSchema();
+        ForkJoinPool pool = options.parallelism > 1 ? new ForkJoinPool(options.parallelism) : null;
+        Parser parser = pool == null
+                ? new Parser(repository, store, ignores)
+                : new Parser(repository, store, ignores, pool);
+        URI repositoryURI = URI.create(options.repositoryURL);
         if (options.commitId.contains(":")) {
             String[] range = options.commitId.split(":");
-            parser.parse(options.root.toPath(), URI.create(options.repositoryURL), range[0], range[1]);
+            if (options.noCheckout) {
+                parser.parse(repositoryURI, range[0], range[1]);
+            } else {
+                parser.parse(options.root.toPath(), repositoryURI, range[0], range[1]);
+            }
+        } else if (options.noCheckout) {
+            parser.parse(options.commitId, repositoryURI);
         } else {
-            parser.parse(options.root.toPath(), options.commitId, URI.create(options.repositoryURL));
+            parser.parse(options.root.toPath(), options.commitId, repositoryURI);
+        }
+        if (pool != null) {
+            pool.shutdown();
         }
         sessionFactory.close();
     }
@@ -71,6 +151,15 @@ public final class Parser {
         }
     }
 
+    public void parse(URI repositoryURI, String revFrom, String revTo) throws IOException, GitAPIException {
+        for (String commitId : gitHelper.getRange(revFrom, revTo)) {
+            parse(commitId, repositoryURI);
+        }
+    }
+
+    /**
+     * Parse a commit by checking it out and walking the work tree found in repositoryPath.
+     */
     public void parse(Path repositoryPath, String commitId, URI repositoryURI) {
 
         log.info("parsing commit {} from repository {} (checked out in {})", commitId, repositoryURI, repositoryPath);
@@ -79,57 +168,34 @@ public final class Parser {
             gitHelper.checkout(commitId);
             Map<String, DiffEntry> diffMap = gitHelper.getDiffMap(commitId);
 
-            // We get the commit and repository since we want to add a relation.
-            var persistedRepo = notebookStore.findOrCreateRepository(repositoryURI);
-
-            var persistedCommit = notebookStore.findOrCreateCommit(commitId);
-
-            RevCommit commit = gitHelper.getCommit(commitId);
-
-            persistedCommit.setAuthorName(commit.getAuthorIdent().getName());
-            persistedCommit.setAuthorEmail(commit.getAuthorIdent().getEmailAddress());
-            persistedCommit.setAuthoredAt(commit.getAuthorIdent().getWhen().toInstant()
-                    .atZone(commit.getAuthorIdent().getTimeZone().toZoneId()).toInstant());
-
-            persistedCommit.setCommitterName(commit.getAuthorIdent().getName());
-            persistedCommit.setCommitterEmail(commit.getAuthorIdent().getEmailAddress());
-            persistedCommit.setCommittedAt(commit.getAuthorIdent().getWhen().toInstant()
-                    .atZone(commit.getAuthorIdent().getTimeZone().toZoneId()).toInstant());
+            var repository = new no.ssb.dapla.blueprint.neo4j.model.Repository(repositoryURI);
+            var commit = new Commit(commitId);
+            setCommitInformation(commit, commitId);
 
-            persistedCommit.setMessage(commit.getFullMessage());
+            // Resolve all the blob ids in one walk instead of one tree lookup per notebook.
+            Map<Path, GitHelper.NotebookBlob> blobs = gitHelper.getNotebookBlobs(commitId, ignores);
 
             Files.walkFileTree(repositoryPath, visitor);
+            Map<Path, GitHelper.NotebookBlob> visited = new LinkedHashMap<>();
             for (Path absolutePath : visitor.getNotebooks()) {
 
                 // (repo/foo/bar).relativize(repo/) -> foo/bar.
                 var relativePath = repositoryPath.relativize(absolutePath);
 
-                Notebook nb = processor.process(repositoryPath, relativePath);
-
-                nb.setBlobId(gitHelper.getObjectId(commitId, relativePath));
-
-                if (diffMap.containsKey(relativePath.toString())) {
-                    switch (diffMap.get(relativePath.toString()).getChangeType()) {
-                        case ADD -> persistedCommit.addCreate(relativePath, nb);
-                        // TODO: Add missing cases.
-                        case MODIFY, RENAME, COPY -> persistedCommit.addUpdate(relativePath, nb);
-                        case DELETE -> {
-                            // it will never reach this, as deleted notebooks are not present in the notebooks list
-                        }
-                    }
-                } else {
-                    persistedCommit.addUnchanged(relativePath, nb);
+                var blob = blobs.get(relativePath);
+                if (blob == null) {
+                    throw new IOException(String.format("could not find file with path %s in commit %s",
+                            relativePath, commitId));
                 }
+
+                visited.put(relativePath, blob);
             }
+            processNotebooks(commit, diffMap, visited,
+                    (path, blob) -> processor.process(repositoryPath, path));
 
-            // Add deleted files
-            diffMap.values().stream()
-                    .filter(entry -> entry.getChangeType().equals(DiffEntry.ChangeType.DELETE))
-                    .forEach(entry -> persistedCommit
-                            .addDelete(entry.getOldPath(), new Notebook(entry.getId(DiffEntry.Side.OLD).toObjectId().getName())));
+            addDeletedNotebooks(commit, diffMap);
 
-            persistedRepo.addCommit(persistedCommit);
-            notebookStore.saveRepository(persistedRepo);
+            save(repository, commit);
 
         } catch (Exception ex) {
             log.warn("failed to parse commit {} from repository {} (checked out in {})", commitId, repositoryURI,
@@ -140,6 +206,190 @@ public final class Parser {
 
     }
 
+    /**
+     * Parse a commit reading the notebooks directly from the git object database.
+     * <p>
+     * Nothing is checked out so the repository can be bare and several commits of the same repository can be
+     * parsed at the same time. If one of the first parents of the commit has already been parsed, only the
+     * notebooks that changed since are read; the others are taken from the store.
+     */
+    public void parse(String commitId, URI repositoryURI) {
+
+        log.info("parsing commit {} from repository {}", commitId, repositoryURI);
+        try {
+
+            Map<String, DiffEntry> diffMap = gitHelper.getDiffMap(commitId);
+
+            var repository = new no.ssb.dapla.blueprint.neo4j.model.Repository(repositoryURI);
+            var commit = new Commit(commitId);
+            setCommitInformation(commit, commitId);
+
+            Optional<String> ancestorId = notebookStore.findParsedCommit(repository.getId(),
+                    gitHelper.getFirstParents(commitId, MAX_ANCESTORS));
+            Map<Path, GitHelper.NotebookBlob> blobs;
+            Map<Path, Notebook> reused = new TreeMap<>();
+            if (ancestorId.isPresent()) {
+                var diff = gitHelper.diffNotebooks(ancestorId.get(), commitId, ignores);
+                log.info("parsing {} notebooks of commit {} incrementally from commit {}", diff.getChanged().size(),
+                        commitId, ancestorId.get());
+                blobs = diff.getChanged();
+                reused.putAll(getNotebooks(repository.getId(), ancestorId.get()));
+                reused.keySet().removeAll(diff.getRemoved());
+                reused.keySet().removeAll(blobs.keySet());
+            } else {
+                blobs = gitHelper.getNotebookBlobs(commitId, ignores);
+            }
+
+            processNotebooks(commit, diffMap, blobs, (path, blob) -> {
+                try (InputStream content = gitHelper.open(blob)) {
+                    return processor.process(content);
+                }
+            });
+            reused.forEach((path, nb) -> addNotebook(commit, diffMap, path, nb));
+
+            addDeletedNotebooks(commit, diffMap);
+
+            save(repository, commit);
+
+        } catch (Exception ex) {
+            log.warn("failed to parse commit {} from repository {}", commitId, repositoryURI, ex);
+        }
+    }
+
+    private void save(no.ssb.dapla.blueprint.neo4j.model.Repository repository, Commit commit) {
+        notebookStore.saveCommit(repository, commit);
+        if (snapshots != null) {
+            snapshots.write(repository.getId(), commit.getId(), toLineage(commit));
+        }
+    }
+
+    private static LineageGraph toLineage(Commit commit) {
+        LineageGraph.Builder builder = LineageGraph.builder();
+        Stream.of(commit.getCreates(), commit.getUpdates(), commit.getUnchanged())
+                .flatMap(Collection::stream)
+                .forEach(file -> builder.addNotebook(file.getPath().toString(), file.getNotebook().getBlobId(),
+                        toPaths(file.getNotebook().getInputs()), toPaths(file.getNotebook().getOutputs())));
+        return builder.build();
+    }
+
+    private static List<String> toPaths(Set<Dataset> datasets) {
+        return datasets.stream().map(dataset -> dataset.getPath().toString()).collect(Collectors.toList());
+    }
+
+    /**
+     * Return the notebooks present in a parsed commit, by path.
+     */
+    private Map<Path, Notebook> getNotebooks(String repositoryId, String commitId) {
+        Map<Path, Notebook> notebooks = new HashMap<>();
+        // Commits without notebooks are not found.
+        notebookStore.getCommit(repositoryId, commitId).ifPresent(commit -> {
+            commit.getCreates().forEach(file -> notebooks.put(file.getPath(), file.getNotebook()));
+            commit.getUpdates().forEach(file -> notebooks.put(file.getPath(), file.getNotebook()));
+            commit.getUnchanged().forEach(file -> notebooks.put(file.getPath(), file.getNotebook()));
+        });
+        return notebooks;
+    }
+
+    private void setCommitInformation(Commit persistedCommit, String commitId) throws IOException {
+        RevCommit commit = gitHelper.getCommit(commitId);
+
+        persistedCommit.setAuthorName(commit.getAuthorIdent().getName());
+        persistedCommit.setAuthorEmail(commit.getAuthorIdent().getEmailAddress());
+        persistedCommit.setAuthoredAt(commit.getAuthorIdent().getWhen().toInstant()
+                .atZone(commit.getAuthorIdent().getTimeZone().toZoneId()).toInstant());
+
+        // Commits are ordered by commit date, which unlike the author date follows rebases and cherry-picks.
+        persistedCommit.setCommitterName(commit.getCommitterIdent().getName());
+        persistedCommit.setCommitterEmail(commit.getCommitterIdent().getEmailAddress());
+        persistedCommit.setCommittedAt(commit.getCommitterIdent().getWhen().toInstant()
+                .atZone(commit.getCommitterIdent().getTimeZone().toZoneId()).toInstant());
+
+        persistedCommit.setMessage(commit.getFullMessage());
+    }
+
+    /**
+     * Load the notebooks using the executor and add them to the commit in the iteration order of blobs.
+     */
+    private void processNotebooks(Commit persistedCommit, Map<String, DiffEntry> diffMap,
+                                  Map<Path, GitHelper.NotebookBlob> blobs, NotebookLoader loader) {
+        Map<Path, CompletableFuture<Notebook>> notebooks = new LinkedHashMap<>();
+        for (Map.Entry<Path, GitHelper.NotebookBlob> blob : blobs.entrySet()) {
+            notebooks.put(blob.getKey(), CompletableFuture.supplyAsync(() -> {
+                try {
+                    return loadNotebook(blob.getKey(), blob.getValue(), loader);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }, executor));
+        }
+        try {
+            for (Map.Entry<Path, CompletableFuture<Notebook>> notebook : notebooks.entrySet()) {
+                addNotebook(persistedCommit, diffMap, notebook.getKey(), notebook.getValue().join());
+            }
+        } catch (CompletionException ce) {
+            notebooks.values().forEach(future -> future.cancel(false));
+            throw ce;
+        }
+    }
+
+    private Notebook loadNotebook(Path path, GitHelper.NotebookBlob blob, NotebookLoader loader) throws IOException {
+        String blobId = blob.getBlobId();
+        if (cache != null) {
+            var cached = cache.get(blobId);
+            if (cached.isPresent()) {
+                return cached.get().toNotebook(blobId);
+            }
+        }
+        Notebook nb = loader.load(path, blob);
+        nb.setBlobId(blobId);
+        if (cache != null) {
+            cache.put(blobId, nb);
+        }
+        return nb;
+    }
+
+    private void addNotebook(Commit persistedCommit, Map<String, DiffEntry> diffMap, Path relativePath, Notebook nb) {
+        if (diffMap.containsKey(relativePath.toString())) {
+            DiffEntry entry = diffMap.get(relativePath.toString());
+            switch (entry.getChangeType()) {
+                case ADD -> persistedCommit.addCreate(relativePath, nb);
+                case MODIFY -> persistedCommit.addUpdate(relativePath, nb,
+                        entry.getId(DiffEntry.Side.OLD).toObjectId().getName());
+                // Renames and copies are not detected by the diff, they are a delete and an add or just an add.
+                case DELETE -> {
+                    // it will never reach this, as deleted notebooks are not present in the notebooks list
+                }
+            }
+        } else {
+            persistedCommit.addUnchanged(relativePath, nb);
+        }
+    }
+
+    private void addDeletedNotebooks(Commit persistedCommit, Map<String, DiffEntry> diffMap) {
+        diffMap.values().stream()
+                .filter(entry -> entry.getChangeType().equals(DiffEntry.ChangeType.DELETE))
+                .filter(entry -> isNotebook(Path.of(entry.getOldPath())))
+                .forEach(entry -> persistedCommit
+                        .addDelete(entry.getOldPath(), new Notebook(entry.getId(DiffEntry.Side.OLD).toObjectId().getName())));
+    }
+
+    private boolean isNotebook(Path path) {
+        if (!path.toString().endsWith(".ipynb")) {
+            return false;
+        }
+        for (int i = 0; i < path.getNameCount() - 1; i++) {
+            if (ignores.contains(path.getName(i).toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface NotebookLoader {
+        Notebook load(Path relativePath, GitHelper.NotebookBlob blob) throws IOException;
+    }
+
     public final static class Options {
 
         @Option(required = true, names = {"-u", "--url"}, description = "Repository URL")
@@ -151,6 +401,12 @@ public final class Parser {
         @Option(names = {"-i", "--ignore"}, description = "folders to ignore")
         public List<String> ignores = List.of();
 
+        @Option(names = {"-p", "--parallelism"}, description = "number of notebooks to process in parallel")
+        public int parallelism = 1;
+
+        @Option(names = "--no-checkout", description = "read the notebooks from the git objects instead of checking out ROOT")
+        public boolean noCheckout = false;
+
         @Option(required = true, names = "--host", description = "Neo4J host")
         public URI host;
 
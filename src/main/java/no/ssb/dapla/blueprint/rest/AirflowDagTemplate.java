@@ -0,0 +1,171 @@
+package no.ssb.dapla.blueprint.rest;
+
+import no.ssb.dapla.blueprint.rest.json.DirectedAcyclicGraph;
+import no.ssb.dapla.blueprint.rest.json.NotebookDetail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders Airflow DAG files from the notebooks of a commit, one task per notebook.
+ * <p>
+ * The template uses the FreeMarker syntax, but only the subset airflow-dag.template.py needs is supported:
+ * <code>${name.property}</code> interpolations and <code>&lt;#list items as item&gt;</code> directives that are
+ * not nested. Interpolated values are sanitized so that they cannot end the Python strings or the shell
+ * commands of the template.
+ */
+public final class AirflowDagTemplate {
+
+    static final String DEFAULT_TEMPLATE = "/airflow-dag.template.py";
+
+    private static final Pattern LIST = Pattern.compile("<#list (\\w+) as (\\w+)>\\n?(.*?)</#list>\\n?",
+            Pattern.DOTALL);
+    private static final Pattern INTERPOLATION = Pattern.compile("\\$\\{([\\w.]+)}");
+    private static final Pattern UNSAFE = Pattern.compile("['\"`$\\\\\\p{Cntrl}]");
+
+    private final List<Segment> segments;
+
+    private AirflowDagTemplate(List<Segment> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * Load the template shipped with the application.
+     */
+    public static AirflowDagTemplate load() {
+        try (InputStream template = AirflowDagTemplate.class.getResourceAsStream(DEFAULT_TEMPLATE)) {
+            if (template == null) {
+                throw new IllegalStateException("could not find " + DEFAULT_TEMPLATE);
+            }
+            return parse(new String(template.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    public static AirflowDagTemplate parse(String template) {
+        List<Segment> segments = new ArrayList<>();
+        Matcher list = LIST.matcher(template);
+        int start = 0;
+        while (list.find()) {
+            segments.add(new Text(template.substring(start, list.start())));
+            segments.add(new Loop(list.group(1), list.group(2), new Text(list.group(3))));
+            start = list.end();
+        }
+        segments.add(new Text(template.substring(start)));
+        return new AirflowDagTemplate(segments);
+    }
+
+    private static Map<String, Object> toTask(NotebookDetail notebook) {
+        Path fileName = Path.of(notebook.getPath()).getFileName();
+        return Map.of(
+                "id", notebook.getId(),
+                "path", notebook.getPath(),
+                "fileName", fileName == null ? notebook.getPath() : fileName.toString()
+        );
+    }
+
+    /**
+     * Render the DAG. Notebooks found at several paths get a single task, named after the first path.
+     *
+     * @param dagId       the id of the DAG in Airflow.
+     * @param description the description of the DAG.
+     */
+    public void render(Writer writer, String dagId, String description, DirectedAcyclicGraph graph)
+            throws IOException {
+        Map<String, Map<String, Object>> tasks = new LinkedHashMap<>();
+        for (NotebookDetail notebook : graph.getNodes()) {
+            tasks.putIfAbsent(notebook.getId(), toTask(notebook));
+        }
+        List<Map<String, Object>> dependencies = new ArrayList<>();
+        for (DirectedAcyclicGraph.Edge edge : graph.getEdges()) {
+            if (!edge.getFrom().equals(edge.getTo())) {
+                dependencies.add(Map.of("producer", tasks.get(edge.getFrom()), "consumer", tasks.get(edge.getTo())));
+            }
+        }
+
+        Map<String, Object> model = Map.of(
+                "dag", Map.of("id", dagId, "description", description),
+                "notebooks", new ArrayList<>(tasks.values()),
+                "dependencies", dependencies
+        );
+        for (Segment segment : segments) {
+            segment.render(writer, model);
+        }
+        writer.flush();
+    }
+
+    private interface Segment {
+        void render(Writer writer, Map<String, Object> model) throws IOException;
+    }
+
+    private static final class Text implements Segment {
+
+        // Literal text and interpolated names, alternately.
+        private final List<String> parts = new ArrayList<>();
+
+        private Text(String text) {
+            Matcher interpolation = INTERPOLATION.matcher(text);
+            int start = 0;
+            while (interpolation.find()) {
+                parts.add(text.substring(start, interpolation.start()));
+                parts.add(interpolation.group(1));
+                start = interpolation.end();
+            }
+            parts.add(text.substring(start));
+        }
+
+        private static String resolve(Map<String, Object> model, String name) {
+            Object value = model;
+            for (String property : name.split("\\.")) {
+                if (!(value instanceof Map)) {
+                    throw new IllegalArgumentException("cannot resolve " + name);
+                }
+                value = ((Map<?, ?>) value).get(property);
+            }
+            if (value == null) {
+                throw new IllegalArgumentException("cannot resolve " + name);
+            }
+            return UNSAFE.matcher(value.toString()).replaceAll("_");
+        }
+
+        @Override
+        public void render(Writer writer, Map<String, Object> model) throws IOException {
+            for (int i = 0; i < parts.size(); i++) {
+                writer.write(i % 2 == 0 ? parts.get(i) : resolve(model, parts.get(i)));
+            }
+        }
+    }
+
+    private static final class Loop implements Segment {
+
+        private final String items;
+        private final String item;
+        private final Text body;
+
+        private Loop(String items, String item, Text body) {
+            this.items = items;
+            this.item = item;
+            this.body = body;
+        }
+
+        @Override
+        public void render(Writer writer, Map<String, Object> model) throws IOException {
+            if (!(model.get(items) instanceof List)) {
+                throw new IllegalArgumentException("cannot list " + items);
+            }
+            Map<String, Object> scope = new HashMap<>(model);
+            for (Object value : (List<?>) model.get(items)) {
+                scope.put(item, value);
+                body.render(writer, scope);
+            }
+        }
+    }
+}
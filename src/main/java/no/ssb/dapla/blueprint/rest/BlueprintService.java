@@ -1,21 +1,36 @@
 package no.ssb.dapla.blueprint.rest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.helidon.common.http.Http;
 import io.helidon.common.http.MediaType;
+import io.helidon.webserver.Handler;
 import io.helidon.webserver.Routing;
 import io.helidon.webserver.ServerRequest;
 import io.helidon.webserver.ServerResponse;
 import io.helidon.webserver.Service;
+import no.ssb.dapla.blueprint.cache.WeightedCache;
+import no.ssb.dapla.blueprint.lineage.ExecutionPlan;
+import no.ssb.dapla.blueprint.lineage.LineageGraph;
+import no.ssb.dapla.blueprint.neo4j.CommitCache;
 import no.ssb.dapla.blueprint.neo4j.GitStore;
 import no.ssb.dapla.blueprint.neo4j.NotebookStore;
-import no.ssb.dapla.blueprint.neo4j.model.Commit;
 import no.ssb.dapla.blueprint.neo4j.model.Notebook;
+import no.ssb.dapla.blueprint.neo4j.projection.CommitRow;
+import no.ssb.dapla.blueprint.neo4j.projection.FileRow;
 import no.ssb.dapla.blueprint.rest.json.*;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -38,12 +53,61 @@ public class BlueprintService implements Service {
     static final MediaType APPLICATION_DAG_JSON = MediaType.create(
             "application", "vnd.ssb.blueprint.dag+json");
 
+    static final MediaType APPLICATION_PLAN_JSON = MediaType.create(
+            "application", "vnd.ssb.blueprint.plan+json");
+
+    static final MediaType TEXT_AIRFLOW_PYTHON = MediaType.builder()
+            .type("text").subtype("x-python").addParameter("flavor", "airflow").build();
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final long DEFAULT_CACHE_WEIGHT = 100_000;
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The maximum size in bytes of the rendered Airflow DAGs kept in memory.
+     */
+    private static final long AIRFLOW_DAG_CACHE_SIZE = 32 * 1024 * 1024;
+
     private final NotebookStore notebookStore;
+    private final CommitCache commitCache;
     private final GitStore gitStore;
+    private final AirflowDagTemplate airflowDagTemplate = AirflowDagTemplate.load();
+    private final WeightedCache<List<String>, byte[]> airflowDags = new WeightedCache<>(AIRFLOW_DAG_CACHE_SIZE,
+            dag -> dag.length);
 
     public BlueprintService(NotebookStore notebookStore, GitStore gitStore) {
+        this(notebookStore, gitStore, new CommitCache(notebookStore, DEFAULT_CACHE_WEIGHT));
+    }
+
+    /**
+     * @param commitCache the cache the commits and their dependencies are read through.
+     */
+    public BlueprintService(NotebookStore notebookStore, GitStore gitStore, CommitCache commitCache) {
         this.notebookStore = Objects.requireNonNull(notebookStore);
         this.gitStore = Objects.requireNonNull(gitStore);
+        this.commitCache = Objects.requireNonNull(commitCache);
+    }
+
+    /**
+     * Add conditional request support to a handler whose response only depends on the commit: its files, the
+     * lineage of its notebooks and their content. The ETag is derived from the commit id, so it does not change
+     * when anything else does, like the ancestors of the commit being parsed.
+     */
+    private Handler immutable(Handler handler) {
+        return ImmutableResourceHandler.create(handler, this::isParsed);
+    }
+
+    /**
+     * Return true if the commit of the request, and its notebook if the path has one, have been parsed.
+     */
+    private boolean isParsed(ServerRequest request) {
+        var files = commitCache.getFiles(parseRepositoryId(request), parseCommitId(request));
+        var notebookId = request.path().param("notebookId");
+        return files.isPresent() && (notebookId == null
+                || files.get().stream().anyMatch(file -> file.getBlobId().equals(notebookId)));
     }
 
     private static String parseCommitId(ServerRequest request) {
@@ -75,25 +139,38 @@ public class BlueprintService implements Service {
                         .orFail()
                 )
                 .get("/repositories/{repoId}/commits/{commitId}", MediaTypeHandler.create()
-                        .accept(this::getRevisionHandler, APPLICATION_REVISION_JSON, APPLICATION_JSON)
+                        .accept(immutable(this::getRevisionHandler), APPLICATION_REVISION_JSON, APPLICATION_JSON)
                         .orFail()
                 )
                 .get("/repositories/{repoId}/commits/{commitId}/notebooks", MediaTypeHandler.create()
-                        .accept(this::getNotebooksHandler, APPLICATION_NOTEBOOK_JSON, APPLICATION_JSON)
-                        .accept(this::getNotebooksAsDAGHandler, APPLICATION_DAG_JSON)
+                        .accept(immutable(this::getNotebooksHandler), APPLICATION_NOTEBOOK_JSON, APPLICATION_JSON)
+                        .accept(immutable(this::getNotebooksAsDAGHandler), APPLICATION_DAG_JSON)
+                        .accept(immutable(this::getNotebooksAsAirflowDagHandler), TEXT_AIRFLOW_PYTHON)
                         .orFail()
                 )
                 .get("/repositories/{repoId}/commits/{commitId}/notebooks/{notebookId}", MediaTypeHandler.create()
-                        .accept(this::getNotebookContentHandler, APPLICATION_JUPYTER_JSON)
-                        .accept(this::getNotebookHandler, APPLICATION_NOTEBOOK_JSON, APPLICATION_JSON)
+                        .accept(immutable(this::getNotebookContentHandler), APPLICATION_JUPYTER_JSON)
+                        .accept(immutable(this::getNotebookHandler), APPLICATION_NOTEBOOK_JSON, APPLICATION_JSON)
                         .orFail()
                 )
                 .get("/repositories/{repoId}/commits/{commitId}/notebooks/{notebookId}/forward", MediaTypeHandler.create()
-                        .accept(this::getDagForward, APPLICATION_DAG_JSON, APPLICATION_JSON)
+                        .accept(immutable(this::getDagForward), APPLICATION_DAG_JSON, APPLICATION_JSON)
                         .orFail()
                 )
                 .get("/repositories/{repoId}/commits/{commitId}/notebooks/{notebookId}/backward", MediaTypeHandler.create()
-                        .accept(this::getDagBackward, APPLICATION_DAG_JSON, APPLICATION_JSON)
+                        .accept(immutable(this::getDagBackward), APPLICATION_DAG_JSON, APPLICATION_JSON)
+                        .orFail()
+                )
+                .get("/repositories/{repoId}/commits/{commitId}/plan", MediaTypeHandler.create()
+                        .accept(immutable(this::getPlanHandler), APPLICATION_PLAN_JSON, APPLICATION_JSON)
+                        .orFail()
+                )
+                .get("/repositories/{repoId}/commits/{commitId}/rerun", MediaTypeHandler.create()
+                        .accept(this::getRerunPlanHandler, APPLICATION_PLAN_JSON, APPLICATION_JSON)
+                        .orFail()
+                )
+                .post("/repositories/{repoId}/commits/{commitId}/reachability", MediaTypeHandler.create()
+                        .accept(Handler.create(ReachabilityQuery.class, this::postReachabilityHandler), APPLICATION_JSON)
                         .orFail()
                 );
 
@@ -107,6 +184,8 @@ public class BlueprintService implements Service {
         try {
             byte[] content = gitStore.getBlob(repositoryId, notebook.getBlobId());
             response.send(content);
+        } catch (RepositoryNotFoundException | MissingObjectException e) {
+            response.status(Http.Status.NOT_FOUND_404).send();
         } catch (Exception e) {
             response.send(e);
         }
@@ -115,57 +194,325 @@ public class BlueprintService implements Service {
     private void getNotebooksHandler(ServerRequest request, ServerResponse response) {
         var repositoryId = parseRepositoryId(request);
         var commitId = parseCommitId(request);
-        var commit = notebookStore.getCommit(repositoryId, commitId);
-        if (commit.isEmpty()) {
+        var files = commitCache.getFiles(repositoryId, commitId);
+        if (files.isEmpty()) {
             response.status(Http.Status.NOT_FOUND_404).send();
         } else {
-            List<NotebookSummary> summaries = Stream.of(
-                    commit.get().getUpdates(),
-                    commit.get().getCreates(),
-                    commit.get().getUnchanged()
-            ).flatMap(Collection::stream)
-                    .map(NotebookSummary::new)
-                    .collect(Collectors.toList());
+            sendJson(request, response, JsonStream.create(JSON.getFactory(),
+                    Stream.of(JsonStream.part(JsonGenerator::writeStartArray)),
+                    toSummaries(repositoryId, commitId, files.get(), FileRow.Change.UPDATES),
+                    toSummaries(repositoryId, commitId, files.get(), FileRow.Change.CREATES),
+                    toSummaries(repositoryId, commitId, files.get(), FileRow.Change.UNCHANGED),
+                    Stream.of(JsonStream.part(JsonGenerator::writeEndArray))
+            ));
+        }
+    }
 
-            response.status(Http.Status.OK_200).send(summaries);
+    /**
+     * Send a JSON response as it is serialized, with the negotiated media type.
+     */
+    private static void sendJson(ServerRequest request, ServerResponse response, JsonStream json) {
+        response.headers().contentType(MediaTypeHandler.negotiatedType(request).orElse(APPLICATION_JSON));
+        response.status(Http.Status.OK_200).send(json);
+    }
+
+    private static Stream<JsonStream.Part> toSummaries(String repositoryId, String commitId, List<FileRow> files,
+                                                       FileRow.Change change) {
+        return files.stream()
+                .filter(file -> file.getChange() == change)
+                .map(file -> generator -> generator.writeObject(new NotebookSummary(repositoryId, commitId, file)));
+    }
+
+    private static NotebookDetail toDetail(String repositoryId, String commitId, LineageGraph graph, int notebook) {
+        return new NotebookDetail(repositoryId, commitId, graph.getPath(notebook), graph.getBlobId(notebook),
+                toDatasets(graph, graph.getInputs(notebook)), toDatasets(graph, graph.getOutputs(notebook)));
+    }
+
+    private static Set<String> toDatasets(LineageGraph graph, int[] datasets) {
+        Set<String> paths = new LinkedHashSet<>();
+        for (int dataset : datasets) {
+            paths.add(graph.getDataset(dataset));
+        }
+        return paths;
+    }
+
+    private static DirectedAcyclicGraph toDAG(String repositoryId, String commitId, LineageGraph graph,
+                                              BitSet notebooks) {
+        List<NotebookDetail> details = notebooks.stream()
+                .mapToObj(notebook -> toDetail(repositoryId, commitId, graph, notebook))
+                .collect(Collectors.toList());
+        return new DirectedAcyclicGraph(details);
+    }
+
+    /**
+     * Return the edges of the {@link DirectedAcyclicGraph} of the notebooks that end at the consumer and have
+     * not been seen yet. Like there, an input comes from the last of the notebooks that produce it.
+     */
+    private static List<DirectedAcyclicGraph.Edge> toEdges(LineageGraph graph, BitSet notebooks, int consumer,
+                                                           Set<DirectedAcyclicGraph.Edge> seen) {
+        List<DirectedAcyclicGraph.Edge> edges = new ArrayList<>();
+        for (int dataset : graph.getInputs(consumer)) {
+            int producer = -1;
+            for (int candidate : graph.getProducers(dataset)) {
+                if (notebooks.get(candidate)) {
+                    producer = Math.max(producer, candidate);
+                }
+            }
+            if (producer != -1) {
+                var edge = new DirectedAcyclicGraph.Edge(graph.getBlobId(producer), graph.getBlobId(consumer));
+                if (seen.add(edge)) {
+                    edges.add(edge);
+                }
+            }
         }
+        return edges;
+    }
+
+    /**
+     * Send the given notebooks of the lineage graph, in path order.
+     * <p>
+     * The response is the JSON of the {@link DirectedAcyclicGraph} of the notebooks, written as it is sent.
+     */
+    private void sendDAG(ServerRequest request, ServerResponse response, String repositoryId, String commitId,
+                         LineageGraph graph, BitSet notebooks) {
+        Set<DirectedAcyclicGraph.Edge> seen = new HashSet<>();
+        sendJson(request, response, JsonStream.create(JSON.getFactory(),
+                Stream.of(JsonStream.part(generator -> {
+                    generator.writeStartObject();
+                    generator.writeArrayFieldStart("nodes");
+                })),
+                notebooks.stream().mapToObj(notebook -> JsonStream.part(generator ->
+                        generator.writeObject(toDetail(repositoryId, commitId, graph, notebook)))),
+                Stream.of(JsonStream.part(generator -> {
+                    generator.writeEndArray();
+                    generator.writeArrayFieldStart("edges");
+                })),
+                notebooks.stream().mapToObj(notebook -> JsonStream.part(generator -> {
+                    for (DirectedAcyclicGraph.Edge edge : toEdges(graph, notebooks, notebook, seen)) {
+                        generator.writeObject(edge);
+                    }
+                })),
+                Stream.of(JsonStream.part(generator -> {
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                }))
+        ));
     }
 
-    private void sendDAG(ServerResponse response, Optional<Commit> commitWithDependencies) {
-        if (commitWithDependencies.isEmpty()) {
+    private void getNotebooksAsDAGHandler(ServerRequest request, ServerResponse response) {
+        var repositoryId = parseRepositoryId(request);
+        var commitId = parseCommitId(request);
+        var graph = commitCache.getLineage(repositoryId, commitId);
+        if (graph.isEmpty()) {
             response.status(Http.Status.NOT_FOUND_404).send();
         } else {
-            Commit commit = commitWithDependencies.get();
-            List<NotebookDetail> notebooks = Stream.of(
-                    commit.getCreates(),
-                    commit.getUpdates(),
-                    commit.getUnchanged()
-            ).flatMap(Collection::stream).map(NotebookDetail::new).collect(Collectors.toList());
-            response.status(Http.Status.OK_200).send(new DirectedAcyclicGraph(notebooks));
+            sendDAG(request, response, repositoryId, commitId, graph.get(), graph.get().all());
         }
     }
 
-    private void getNotebooksAsDAGHandler(ServerRequest request, ServerResponse response) {
+    private byte[] renderAirflowDag(String repositoryId, String commitId, LineageGraph graph) {
+        ByteArrayOutputStream dag = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(dag, StandardCharsets.UTF_8)) {
+            airflowDagTemplate.render(writer, "blueprint_" + repositoryId, "Notebooks of commit " + commitId,
+                    toDAG(repositoryId, commitId, graph, graph.all()));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return dag.toByteArray();
+    }
+
+    /**
+     * Send the notebooks of the commit as an Airflow DAG file. Files are rendered once per commit.
+     */
+    private void getNotebooksAsAirflowDagHandler(ServerRequest request, ServerResponse response) {
         var repositoryId = parseRepositoryId(request);
         var commitId = parseCommitId(request);
-        var commitWithDependencies = notebookStore.getDependencies(repositoryId, commitId);
-        sendDAG(response, commitWithDependencies);
+        var dag = airflowDags.get(List.of(repositoryId, commitId), key -> commitCache
+                .getLineage(repositoryId, commitId)
+                .map(graph -> renderAirflowDag(repositoryId, commitId, graph)));
+        if (dag.isEmpty()) {
+            response.status(Http.Status.NOT_FOUND_404).send();
+        } else {
+            response.headers().contentType(TEXT_AIRFLOW_PYTHON);
+            response.status(Http.Status.OK_200).send(dag.get());
+        }
     }
 
-    private void getDagBackward(ServerRequest request, ServerResponse response) {
+    /**
+     * Send the notebooks reachable from the notebook of the request, including itself.
+     */
+    private void sendDependencies(ServerRequest request, ServerResponse response,
+                                  BiFunction<LineageGraph, int[], BitSet> traversal) {
         var repositoryId = parseRepositoryId(request);
         var commitId = parseCommitId(request);
         var notebookId = parseNotebookId(request);
-        var commitWithDependencies = notebookStore.getBackwardDependencies(repositoryId, commitId, notebookId);
-        sendDAG(response, commitWithDependencies);
+        var graph = commitCache.getLineage(repositoryId, commitId);
+        int[] notebooks = graph.map(lineage -> lineage.findNotebooks(notebookId)).orElse(new int[0]);
+        if (notebooks.length == 0) {
+            response.status(Http.Status.NOT_FOUND_404).send();
+        } else {
+            sendDAG(request, response, repositoryId, commitId, graph.get(), traversal.apply(graph.get(), notebooks));
+        }
+    }
+
+    private void getDagBackward(ServerRequest request, ServerResponse response) {
+        sendDependencies(request, response, LineageGraph::backward);
     }
 
     private void getDagForward(ServerRequest request, ServerResponse response) {
+        sendDependencies(request, response, LineageGraph::forward);
+    }
+
+    private static List<NotebookSummary> toSummaries(String repositoryId, String commitId, LineageGraph graph,
+                                                     int[] notebooks) {
+        return Arrays.stream(notebooks)
+                .mapToObj(notebook -> new NotebookSummary(repositoryId, commitId, graph.getPath(notebook),
+                        graph.getBlobId(notebook)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Send the execution plan, or the cycles that prevent ordering the notebooks.
+     */
+    private void sendPlan(ServerResponse response, String repositoryId, String commitId, ExecutionPlan plan) {
+        var graph = plan.getGraph();
+        if (plan.hasCycles()) {
+            List<List<NotebookSummary>> cycles = plan.getCycles().stream()
+                    .map(cycle -> toSummaries(repositoryId, commitId, graph, cycle))
+                    .collect(Collectors.toList());
+            response.status(Http.Status.CONFLICT_409).send(new Cycles(cycles));
+        } else {
+            List<List<NotebookSummary>> levels = plan.getLevels().stream()
+                    .map(level -> toSummaries(repositoryId, commitId, graph, level))
+                    .collect(Collectors.toList());
+            response.status(Http.Status.OK_200).send(new Plan(levels,
+                    toSummaries(repositoryId, commitId, graph, plan.getCriticalPath())));
+        }
+    }
+
+    private void getPlanHandler(ServerRequest request, ServerResponse response) {
         var repositoryId = parseRepositoryId(request);
         var commitId = parseCommitId(request);
-        var notebookId = parseNotebookId(request);
-        var commitWithDependencies = notebookStore.getForwardDependencies(repositoryId, commitId, notebookId);
-        sendDAG(response, commitWithDependencies);
+        var graph = commitCache.getLineage(repositoryId, commitId);
+        if (graph.isEmpty()) {
+            response.status(Http.Status.NOT_FOUND_404).send();
+        } else {
+            sendPlan(response, repositoryId, commitId, ExecutionPlan.create(graph.get()));
+        }
+    }
+
+    /**
+     * Send the plan of the notebooks to re-run after the commit: the created and updated notebooks, the
+     * notebooks that consume what deleted notebooks produced or what updated notebooks stopped producing, and
+     * everything downstream of them.
+     * <p>
+     * What deleted and updated notebooks produced is only known once the commits that added them are parsed, which
+     * can happen after this commit. The files are therefore read from the store and the plan is not cacheable.
+     */
+    private void getRerunPlanHandler(ServerRequest request, ServerResponse response) {
+        var repositoryId = parseRepositoryId(request);
+        var commitId = parseCommitId(request);
+        var reachability = commitCache.getReachability(repositoryId, commitId);
+        if (reachability.isEmpty()) {
+            response.status(Http.Status.NOT_FOUND_404).send();
+            return;
+        }
+        var index = reachability.get();
+        var graph = index.getGraph();
+
+        BitSet changed = new BitSet();
+        for (FileRow file : notebookStore.getFiles(repositoryId, commitId).orElse(List.of())) {
+            switch (file.getChange()) {
+                case CREATES, UPDATES -> {
+                    for (int notebook : graph.findNotebooks(file.getBlobId())) {
+                        if (graph.getPath(notebook).equals(file.getPath())) {
+                            changed.set(notebook);
+                        }
+                    }
+                    // The consumers of the outputs that are still produced are downstream of the notebook.
+                    for (String output : file.getPreviousOutputs()) {
+                        if (!file.getOutputs().contains(output)) {
+                            setConsumers(graph, output, changed);
+                        }
+                    }
+                }
+                // Deleted notebooks are not in the lineage, but what they produced is not produced anymore.
+                case DELETES -> {
+                    for (String output : file.getOutputs()) {
+                        setConsumers(graph, output, changed);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        sendPlan(response, repositoryId, commitId,
+                ExecutionPlan.create(graph, index.downstream(changed.stream().toArray())));
+    }
+
+    private static void setConsumers(LineageGraph graph, String path, BitSet notebooks) {
+        graph.findDataset(path).ifPresent(dataset -> {
+            for (int consumer : graph.getConsumers(dataset)) {
+                notebooks.set(consumer);
+            }
+        });
+    }
+
+    /**
+     * Answer a batch of reachability questions with the reachability index of the commit.
+     */
+    private void postReachabilityHandler(ServerRequest request, ServerResponse response, ReachabilityQuery query) {
+        var repositoryId = parseRepositoryId(request);
+        var commitId = parseCommitId(request);
+        var reachability = commitCache.getReachability(repositoryId, commitId);
+        if (reachability.isEmpty()) {
+            response.status(Http.Status.NOT_FOUND_404).send();
+            return;
+        }
+        var index = reachability.get();
+        var graph = index.getGraph();
+        boolean downstream = query.getDirection() == ReachabilityQuery.Direction.DOWNSTREAM;
+
+        BitSet targets = graph.all();
+        if (query.getTargets() != null) {
+            targets = new BitSet();
+            for (String target : query.getTargets()) {
+                for (int notebook : graph.findNotebooks(target)) {
+                    targets.set(notebook);
+                }
+            }
+        }
+
+        BitSet affected = new BitSet();
+        Map<String, List<String>> datasets = new LinkedHashMap<>();
+        for (String path : query.getDatasets()) {
+            BitSet reached = graph.findDataset(path).stream()
+                    .mapToObj(dataset -> downstream
+                            ? index.downstreamOfDatasets(dataset)
+                            : index.upstreamOfDatasets(dataset))
+                    .findFirst().orElseGet(BitSet::new);
+            reached.and(targets);
+            affected.or(reached);
+            datasets.put(path, toBlobIds(graph, reached));
+        }
+        Map<String, List<String>> notebooks = new LinkedHashMap<>();
+        for (String blobId : query.getNotebooks()) {
+            int[] sources = graph.findNotebooks(blobId);
+            BitSet reached = downstream ? index.downstream(sources) : index.upstream(sources);
+            reached.and(targets);
+            affected.or(reached);
+            notebooks.put(blobId, toBlobIds(graph, reached));
+        }
+        response.status(Http.Status.OK_200).send(
+                new Reachability(datasets, notebooks, toBlobIds(graph, affected)));
+    }
+
+    /**
+     * Return the distinct ids of the notebooks, in path order.
+     */
+    private static List<String> toBlobIds(LineageGraph graph, BitSet notebooks) {
+        return notebooks.stream().mapToObj(graph::getBlobId).distinct().collect(Collectors.toList());
     }
 
     private void getNotebookHandler(ServerRequest request, ServerResponse response) {
@@ -176,25 +523,54 @@ public class BlueprintService implements Service {
         response.status(Http.Status.OK_200).send(notebook);
     }
 
+    private static OptionalInt parseLimit(ServerRequest request) {
+        try {
+            int limit = request.queryParams().first("limit").map(Integer::parseInt).orElse(DEFAULT_PAGE_SIZE);
+            return limit < 1 || limit > MAX_PAGE_SIZE ? OptionalInt.empty() : OptionalInt.of(limit);
+        } catch (NumberFormatException nfe) {
+            return OptionalInt.empty();
+        }
+    }
+
+    /**
+     * Send a page of the commits, the most recent first. The next page, if any, is linked in the Link header.
+     */
     private void getRevisionsHandler(ServerRequest request, ServerResponse response) {
         var repositoryId = parseRepositoryId(request);
-        Optional<Collection<Commit>> commits = notebookStore.getCommits(repositoryId);
+        var limit = parseLimit(request);
+        if (limit.isEmpty()) {
+            response.status(Http.Status.BAD_REQUEST_400)
+                    .send(String.format("limit must be between 1 and %d", MAX_PAGE_SIZE));
+            return;
+        }
+        var after = request.queryParams().first("after").orElse(null);
+
+        // One more commit tells if there is a next page.
+        Optional<List<CommitRow>> commits = notebookStore.getCommits(repositoryId, limit.getAsInt() + 1, after);
         if (commits.isEmpty()) {
             response.status(Http.Status.NOT_FOUND_404).send();
-        } else {
-            List<CommitSummary> summaries = commits.get().stream().map(CommitSummary::new).collect(Collectors.toList());
-            response.status(Http.Status.OK_200).send(summaries);
+            return;
+        }
+        List<CommitRow> page = commits.get();
+        if (page.size() > limit.getAsInt()) {
+            page = page.subList(0, limit.getAsInt());
+            response.headers().add(Http.Header.LINK, String.format("<%s?limit=%d&after=%s>; rel=\"next\"",
+                    request.path().absolute(), limit.getAsInt(),
+                    URLEncoder.encode(page.get(page.size() - 1).getId(), StandardCharsets.UTF_8)));
         }
+        List<CommitSummary> summaries = page.stream().map(CommitSummary::new).collect(Collectors.toList());
+        response.status(Http.Status.OK_200).send(summaries);
     }
 
     private void getRevisionHandler(ServerRequest request, ServerResponse response) {
         var repositoryId = parseRepositoryId(request);
         var commitId = parseCommitId(request);
-        var commit = notebookStore.getCommit(repositoryId, commitId);
-        if (commit.isEmpty()) {
+        var commit = notebookStore.getCommitRow(repositoryId, commitId);
+        var files = commitCache.getFiles(repositoryId, commitId);
+        if (commit.isEmpty() || files.isEmpty()) {
             response.status(Http.Status.NOT_FOUND_404).send();
         } else {
-            response.status(Http.Status.OK_200).send(new CommitDetail(commit.get()));
+            response.status(Http.Status.OK_200).send(new CommitDetail(repositoryId, commit.get(), files.get()));
         }
     }
 }
@@ -5,8 +5,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.helidon.common.http.Http;
 import io.helidon.webserver.*;
+import no.ssb.dapla.blueprint.lineage.LineageSnapshots;
 import no.ssb.dapla.blueprint.neo4j.GitStore;
 import no.ssb.dapla.blueprint.neo4j.NotebookStore;
+import no.ssb.dapla.blueprint.parser.ParseResultCache;
 import no.ssb.dapla.blueprint.parser.Parser;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -17,6 +19,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.*;
 
 import static io.helidon.common.http.Http.Status.*;
@@ -33,34 +36,98 @@ public class GithubHookService implements Service {
     private static final Http.ResponseStatus TOO_MANY_REQUESTS = Http.ResponseStatus.create(429, "Too Many Requests");
     private static final String HOOK_PATH = "/githubhook";
     private static final int GITHOOK_TIMEOUT = 10;
+    private static final int SHUTDOWN_TIMEOUT = 60;
     private final GithubHookVerifier verifier;
     private final ExecutorService parserExecutor;
+    private final ForkJoinPool notebookPool;
+    private final Executor notebookExecutor;
     private final ObjectMapper mapper = new ObjectMapper();
     private final NotebookStore notebookStore;
     private final GitStore gitStore;
+    private final ParseResultCache parseCache;
+    private final LineageSnapshots snapshots;
+    // The commits being parsed. Fetches are coalesced by the GitStore and other commits are parsed concurrently.
+    private final Set<String> parsing = ConcurrentHashMap.newKeySet();
 
     public GithubHookService(NotebookStore notebookStore, GitStore gitStore, GithubHookVerifier verifier) throws NoSuchAlgorithmException {
+        this(notebookStore, gitStore, verifier, 1);
+    }
+
+    public GithubHookService(NotebookStore notebookStore, GitStore gitStore, GithubHookVerifier verifier,
+                             int parallelism) throws NoSuchAlgorithmException {
+        this(notebookStore, gitStore, verifier, parallelism, null);
+    }
+
+    public GithubHookService(NotebookStore notebookStore, GitStore gitStore, GithubHookVerifier verifier,
+                             int parallelism, ParseResultCache parseCache) throws NoSuchAlgorithmException {
+        this(notebookStore, gitStore, verifier, parallelism, parseCache, null);
+    }
+
+    /**
+     * @param parallelism the number of notebooks of a commit that are processed in parallel.
+     * @param parseCache  the cache of the parsed notebooks, shared by all the repositories. Can be null.
+     * @param snapshots   where the lineage snapshots of the parsed commits are written. Can be null.
+     */
+    public GithubHookService(NotebookStore notebookStore, GitStore gitStore, GithubHookVerifier verifier,
+                             int parallelism, ParseResultCache parseCache, LineageSnapshots snapshots)
+            throws NoSuchAlgorithmException {
+        this.parseCache = parseCache;
+        this.snapshots = snapshots;
         this.notebookStore = Objects.requireNonNull(notebookStore);
         this.gitStore = Objects.requireNonNull(gitStore);
         this.verifier = Objects.requireNonNull(verifier);
         this.parserExecutor = Executors.newFixedThreadPool(4);
+        this.notebookPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.notebookExecutor = notebookPool != null ? notebookPool : Runnable::run;
     }
 
-    public synchronized void checkoutAndParse(JsonNode payload) {
+    /**
+     * Stop accepting hooks and wait for the commits being parsed, then stop the notebook executor.
+     */
+    public void shutdown() {
+        parserExecutor.shutdown();
+        try {
+            if (!parserExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.warn("Could not parse the pending commits before timeout");
+                parserExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            parserExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            if (notebookPool != null) {
+                notebookPool.shutdownNow();
+            }
+        }
+    }
+
+    public void checkoutAndParse(JsonNode payload) {
 
         String repoUrl = payload.get("repository").get("clone_url").textValue();
 
-        try (Git git = Git.wrap(gitStore.get(URI.create(repoUrl)))) {
+        var ref = payload.hasNonNull("ref") ? payload.get("ref").textValue() : null;
+        var commitId = payload.get("head_commit").get("id").textValue();
+
+        // Redelivered hooks of a commit that is being parsed.
+        String key = repoUrl + " " + commitId;
+        if (!parsing.add(key)) {
+            LOG.info("commit {} of {} is already being parsed", commitId, repoUrl);
+            return;
+        }
+
+        try (var repository = gitStore.get(URI.create(repoUrl), ref, commitId);
+             Git git = Git.wrap(repository.get())) {
 
-            var commitId = payload.get("head_commit").get("id").textValue();
-            var path = git.getRepository().getWorkTree().toPath();
-            Parser parser = new Parser(git.getRepository(), notebookStore);
-            parser.parse(path, commitId, URI.create(repoUrl));
+            Parser parser = new Parser(git.getRepository(), notebookStore, notebookExecutor, parseCache,
+                    snapshots);
+            parser.parse(commitId, URI.create(repoUrl));
 
         } catch (GitAPIException e) {
             LOG.error("Error connecting to remote repository", e);
         } catch (IOException e) {
             LOG.error("Error parsing notebooks", e);
+        } finally {
+            parsing.remove(key);
         }
     }
 
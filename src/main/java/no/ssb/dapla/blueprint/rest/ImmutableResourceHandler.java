@@ -0,0 +1,124 @@
+package no.ssb.dapla.blueprint.rest;
+
+import io.helidon.common.http.Http;
+import io.helidon.common.http.MediaType;
+import io.helidon.webserver.Handler;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+import no.ssb.dapla.blueprint.parser.NotebookProcessor;
+import org.eclipse.jgit.util.Hex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Adds conditional request support to a handler of a resource whose data never changes, like everything under a
+ * commit.
+ * <p>
+ * The strong ETag is derived from the path, the commit id, the media type chosen by the {@link MediaTypeHandler},
+ * the version of the parser and {@link #REPRESENTATION_VERSION}. Requests with a matching
+ * <code>If-None-Match</code>, or with <code>If-None-Match: *</code> for a resource that exists, are answered with
+ * <code>304 Not Modified</code> without calling the handler.
+ * <p>
+ * The representations still depend on the code of the server, so caches must revalidate them: a revalidation only
+ * costs a 304 as long as the ETag is the same.
+ */
+public class ImmutableResourceHandler implements Handler {
+
+    /**
+     * The version of the representations of the commit resources. Increment it when a change of the server changes
+     * them, the DTOs, the ordering of the notebooks or the Airflow template for instance.
+     */
+    static final int REPRESENTATION_VERSION = 1;
+
+    static final String CACHE_CONTROL = "public, no-cache";
+
+    private final Handler handler;
+    private final Predicate<ServerRequest> exists;
+
+    private ImmutableResourceHandler(Handler handler, Predicate<ServerRequest> exists) {
+        this.handler = Objects.requireNonNull(handler);
+        this.exists = Objects.requireNonNull(exists);
+    }
+
+    /**
+     * Wrap a handler of a path containing a <code>commitId</code> parameter. The response of the handler must only
+     * depend on the commit, since nothing else is part of the ETag.
+     *
+     * @param exists returns true if the resource of the request exists, for <code>If-None-Match: *</code>.
+     */
+    public static ImmutableResourceHandler create(Handler handler, Predicate<ServerRequest> exists) {
+        return new ImmutableResourceHandler(handler, exists);
+    }
+
+    static String computeETag(String path, String commitId, MediaType mediaType) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String part : List.of(path, commitId, String.valueOf(mediaType),
+                    String.valueOf(NotebookProcessor.VERSION), String.valueOf(REPRESENTATION_VERSION))) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return '"' + Hex.toHexString(digest.digest()) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Return true if one of the If-None-Match header values matches the ETag, using the weak comparison.
+     * <code>*</code> is not handled here since it depends on the existence of the resource.
+     */
+    static boolean matches(List<String> ifNoneMatch, String etag) {
+        for (String header : ifNoneMatch) {
+            for (String candidate : header.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true if the If-None-Match header is <code>*</code>.
+     */
+    static boolean matchesAny(List<String> ifNoneMatch) {
+        return ifNoneMatch.stream().anyMatch(header -> header.trim().equals("*"));
+    }
+
+    @Override
+    public void accept(ServerRequest req, ServerResponse res) {
+        var commitId = Objects.requireNonNull(req.path().param("commitId"));
+        var mediaType = MediaTypeHandler.negotiatedType(req).orElse(null);
+        var etag = computeETag(req.uri().getPath(), commitId, mediaType);
+
+        var ifNoneMatch = req.headers().values(Http.Header.IF_NONE_MATCH);
+        if (matches(ifNoneMatch, etag) || (matchesAny(ifNoneMatch) && exists.test(req))) {
+            res.headers().put(Http.Header.ETAG, etag);
+            res.headers().put(Http.Header.CACHE_CONTROL, CACHE_CONTROL);
+            res.headers().put(Http.Header.VARY, Http.Header.ACCEPT);
+            res.status(Http.Status.NOT_MODIFIED_304).send();
+            return;
+        }
+
+        // Only successful responses can be cached; the commit might not be parsed yet.
+        res.headers().beforeSend(headers -> {
+            if (res.status().code() == Http.Status.OK_200.code()) {
+                headers.put(Http.Header.ETAG, etag);
+                headers.put(Http.Header.CACHE_CONTROL, CACHE_CONTROL);
+                // The representation depends on the negotiated media type.
+                headers.put(Http.Header.VARY, Http.Header.ACCEPT);
+            }
+        });
+        handler.accept(req, res);
+    }
+}
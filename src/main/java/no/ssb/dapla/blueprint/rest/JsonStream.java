@@ -0,0 +1,181 @@
+package no.ssb.dapla.blueprint.rest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.helidon.common.http.DataChunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A JSON response body that is serialized as it is sent.
+ * <p>
+ * The JSON is written by a sequence of parts, each writing a piece of the document with a {@link JsonGenerator}.
+ * Parts are only written when the subscriber requests chunks, and chunks are sent once they reach
+ * {@link #CHUNK_SIZE} bytes, so the whole document never needs to be in memory. A stream can only be subscribed
+ * to once.
+ */
+public final class JsonStream implements Flow.Publisher<DataChunk> {
+
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    private final JsonFactory factory;
+    private final Iterator<? extends Part> parts;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    private JsonStream(JsonFactory factory, Iterator<? extends Part> parts) {
+        this.factory = Objects.requireNonNull(factory);
+        this.parts = Objects.requireNonNull(parts);
+    }
+
+    /**
+     * Create a stream that writes the parts of the given streams, one stream after the other.
+     *
+     * @param factory the factory of the generator. Its codec is used to write objects.
+     */
+    @SafeVarargs
+    public static JsonStream create(JsonFactory factory, Stream<? extends Part>... parts) {
+        Iterator<Stream<? extends Part>> streams = Arrays.asList(parts).iterator();
+        return new JsonStream(factory, new Iterator<Part>() {
+
+            private Iterator<? extends Part> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && streams.hasNext()) {
+                    current = streams.next().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Part next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        });
+    }
+
+    /**
+     * Return a part, for type inference.
+     */
+    public static Part part(Part part) {
+        return part;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super DataChunk> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("the stream can only be subscribed to once"));
+            return;
+        }
+        subscriber.onSubscribe(new Subscription(subscriber));
+    }
+
+    @FunctionalInterface
+    public interface Part {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private final class Subscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super DataChunk> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(CHUNK_SIZE * 2);
+        private volatile boolean cancelled;
+
+        // Only accessed by the thread that drains.
+        private JsonGenerator generator;
+        private boolean done;
+
+        private Subscription(Flow.Subscriber<? super DataChunk> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("the number of requested chunks must be positive"));
+                return;
+            }
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Send as many chunks as requested. Requests made from onNext are handled by the loop, not recursively.
+         */
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!cancelled && requested.get() > 0) {
+                    DataChunk chunk;
+                    try {
+                        chunk = nextChunk();
+                    } catch (IOException | RuntimeException e) {
+                        cancelled = true;
+                        subscriber.onError(e);
+                        return;
+                    }
+                    requested.decrementAndGet();
+                    subscriber.onNext(chunk);
+                    if (done) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private DataChunk nextChunk() throws IOException {
+            if (generator == null) {
+                generator = factory.createGenerator(buffer);
+            }
+            while (buffer.size() < CHUNK_SIZE && parts.hasNext()) {
+                parts.next().write(generator);
+                generator.flush();
+            }
+            if (!parts.hasNext()) {
+                generator.close();
+                done = true;
+            }
+            DataChunk chunk = DataChunk.create(buffer.toByteArray());
+            buffer.reset();
+            return chunk;
+        }
+    }
+}
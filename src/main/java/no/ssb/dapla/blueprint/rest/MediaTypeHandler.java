@@ -9,6 +9,7 @@ import io.helidon.webserver.ServerResponse;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Inspired by {@link io.helidon.webserver.RequestPredicate}.
@@ -63,10 +64,18 @@ public class MediaTypeHandler implements Handler {
     }
 
 
+    /**
+     * Return the media type a {@link MediaTypeHandler} selected for the request.
+     */
+    public static Optional<MediaType> negotiatedType(ServerRequest req) {
+        return req.context().get(MediaTypeHandler.class, MediaType.class);
+    }
+
     @Override
     public void accept(ServerRequest req, ServerResponse res) {
         for (MediaType acceptedType : req.headers().acceptedTypes()) {
             if (handlers.containsKey(acceptedType)) {
+                req.context().register(MediaTypeHandler.class, acceptedType);
                 handlers.get(acceptedType).accept(req, res);
                 return;
             }
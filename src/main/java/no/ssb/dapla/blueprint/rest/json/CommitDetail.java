@@ -1,25 +1,44 @@
 package no.ssb.dapla.blueprint.rest.json;
 
-import no.ssb.dapla.blueprint.neo4j.model.Commit;
+import no.ssb.dapla.blueprint.neo4j.projection.CommitRow;
+import no.ssb.dapla.blueprint.neo4j.projection.FileRow;
 
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class CommitDetail extends CommitSummary {
 
-    public CommitDetail(Commit delegate) {
-        super(delegate);
+    private final List<NotebookSummary> updated;
+    private final List<NotebookSummary> created;
+    private final List<NotebookSummary> deleted;
+
+    /**
+     * @param files the files of the commit, in the order they are listed.
+     */
+    public CommitDetail(String repositoryId, CommitRow commit, List<FileRow> files) {
+        super(commit);
+        this.updated = toSummaries(repositoryId, commit, files, FileRow.Change.UPDATES);
+        this.created = toSummaries(repositoryId, commit, files, FileRow.Change.CREATES);
+        this.deleted = toSummaries(repositoryId, commit, files, FileRow.Change.DELETES);
+    }
+
+    private static List<NotebookSummary> toSummaries(String repositoryId, CommitRow commit, List<FileRow> files,
+                                                     FileRow.Change change) {
+        return files.stream()
+                .filter(file -> file.getChange() == change)
+                .map(file -> new NotebookSummary(repositoryId, commit.getId(), file))
+                .collect(Collectors.toUnmodifiableList());
     }
 
     public List<NotebookSummary> getUpdated() {
-        return delegate.getUpdates().stream().map(NotebookSummary::new).collect(Collectors.toList());
+        return updated;
     }
 
     public List<NotebookSummary> getCreated() {
-        return delegate.getCreates().stream().map(NotebookSummary::new).collect(Collectors.toList());
+        return created;
     }
 
     public List<NotebookSummary> getDeleted() {
-        return delegate.getDeletes().stream().map(NotebookSummary::new).collect(Collectors.toList());
+        return deleted;
     }
 }
@@ -1,43 +1,53 @@
 package no.ssb.dapla.blueprint.rest.json;
 
-import no.ssb.dapla.blueprint.neo4j.model.Commit;
+import no.ssb.dapla.blueprint.neo4j.projection.CommitRow;
 
 import java.time.Instant;
 
 public class CommitSummary {
 
-    protected final Commit delegate;
-
-    public CommitSummary(Commit delegate) {
-        this.delegate = delegate;
+    private final String id;
+    private final Person author;
+    private final Person committer;
+    private final Instant authoredAt;
+    private final Instant committedAt;
+    private final String message;
+
+    public CommitSummary(CommitRow commit) {
+        this.id = commit.getId();
+        this.author = new Person(commit.getAuthorName(), commit.getAuthorEmail());
+        this.committer = new Person(commit.getCommitterName(), commit.getCommitterEmail());
+        this.authoredAt = commit.getAuthoredAt();
+        this.committedAt = commit.getCommittedAt();
+        this.message = commit.getMessage();
     }
 
     public String getId() {
-        return delegate.getId();
+        return id;
     }
 
     public Person getAuthor() {
-        return new Person(delegate.getAuthorName(), delegate.getAuthorEmail());
+        return author;
     }
 
     public Person getCommitter() {
-        return new Person(delegate.getCommitterName(), delegate.getCommitterEmail());
+        return committer;
     }
 
     public Instant getAuthoredAt() {
-        return delegate.getAuthoredAt();
+        return authoredAt;
     }
 
     public Instant getCommittedAt() {
-        return delegate.getCommittedAt();
+        return committedAt;
     }
 
     public Instant getCreatedAt() {
-        return delegate.getAuthoredAt();
+        return authoredAt;
     }
 
     public String getMessage() {
-        return delegate.getMessage();
+        return message;
     }
 
     public static class Person {
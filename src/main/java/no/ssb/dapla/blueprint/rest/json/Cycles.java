@@ -0,0 +1,24 @@
+package no.ssb.dapla.blueprint.rest.json;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The groups of notebooks that depend on each other and prevent the notebooks of a commit from being ordered.
+ */
+public class Cycles {
+
+    private final List<List<NotebookSummary>> cycles;
+
+    public Cycles(List<List<NotebookSummary>> cycles) {
+        this.cycles = Objects.requireNonNull(cycles);
+    }
+
+    public String getMessage() {
+        return "the notebooks of the commit have cyclic dependencies";
+    }
+
+    public List<List<NotebookSummary>> getCycles() {
+        return cycles;
+    }
+}
@@ -1,29 +1,33 @@
 package no.ssb.dapla.blueprint.rest.json;
 
-import no.ssb.dapla.blueprint.neo4j.model.CommittedFile;
-import no.ssb.dapla.blueprint.neo4j.model.Dataset;
+import no.ssb.dapla.blueprint.neo4j.projection.FileRow;
 
-import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 public class NotebookDetail extends NotebookSummary {
 
-    public NotebookDetail(CommittedFile delegate) {
-        super(delegate);
+    private final Set<String> inputs;
+    private final Set<String> outputs;
+
+    public NotebookDetail(String repositoryId, String commitId, String path, String blobId,
+                          Collection<String> inputs, Collection<String> outputs) {
+        super(repositoryId, commitId, path, blobId);
+        this.inputs = Collections.unmodifiableSet(new LinkedHashSet<>(inputs));
+        this.outputs = Collections.unmodifiableSet(new LinkedHashSet<>(outputs));
+    }
+
+    public NotebookDetail(String repositoryId, String commitId, FileRow file) {
+        this(repositoryId, commitId, file.getPath(), file.getBlobId(), file.getInputs(), file.getOutputs());
     }
 
     public Set<String> getInputs() {
-        return delegate.getNotebook().getInputs().stream()
-                .map(Dataset::getPath)
-                .map(Path::toString)
-                .collect(Collectors.toSet());
+        return inputs;
     }
 
     public Set<String> getOutputs() {
-        return delegate.getNotebook().getOutputs().stream()
-                .map(Dataset::getPath)
-                .map(Path::toString)
-                .collect(Collectors.toSet());
+        return outputs;
     }
 }
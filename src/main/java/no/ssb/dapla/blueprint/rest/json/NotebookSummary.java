@@ -1,33 +1,45 @@
 package no.ssb.dapla.blueprint.rest.json;
 
-import no.ssb.dapla.blueprint.neo4j.model.CommittedFile;
+import no.ssb.dapla.blueprint.neo4j.projection.FileRow;
+
+import java.util.Objects;
 
 public class NotebookSummary {
 
-    protected final CommittedFile delegate;
+    private final String repositoryId;
+    private final String commitId;
+    private final String path;
+    private final String blobId;
+
+    public NotebookSummary(String repositoryId, String commitId, String path, String blobId) {
+        this.repositoryId = Objects.requireNonNull(repositoryId);
+        this.commitId = Objects.requireNonNull(commitId);
+        this.path = Objects.requireNonNull(path);
+        this.blobId = Objects.requireNonNull(blobId);
+    }
 
-    public NotebookSummary(CommittedFile delegate) {
-        this.delegate = delegate;
+    public NotebookSummary(String repositoryId, String commitId, FileRow file) {
+        this(repositoryId, commitId, file.getPath(), file.getBlobId());
     }
 
     public String getId() {
-        return delegate.getNotebook().getBlobId();
+        return blobId;
     }
 
     public String getCommitId() {
-        return delegate.getCommit().getId();
+        return commitId;
     }
 
     public String getPath() {
-        return delegate.getPath().toString();
+        return path;
     }
 
     public String getFetchUrl() {
         return String.format(
                 "/api/v1/repositories/%s/commits/%s/notebooks/%s",
-                delegate.getCommit().getRepository().getId(),
-                delegate.getCommit().getId(),
-                delegate.getNotebook().getBlobId()
+                repositoryId,
+                commitId,
+                blobId
         );
     }
 }
@@ -0,0 +1,35 @@
+package no.ssb.dapla.blueprint.rest.json;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An execution plan of the notebooks of a commit. The notebooks of a level can run concurrently once the
+ * notebooks of the previous levels are done.
+ */
+public class Plan {
+
+    private final List<List<NotebookSummary>> levels;
+    private final List<NotebookSummary> criticalPath;
+
+    public Plan(List<List<NotebookSummary>> levels, List<NotebookSummary> criticalPath) {
+        this.levels = Objects.requireNonNull(levels);
+        this.criticalPath = Objects.requireNonNull(criticalPath);
+    }
+
+    public int getDepth() {
+        return levels.size();
+    }
+
+    public int getWidth() {
+        return levels.stream().mapToInt(List::size).max().orElse(0);
+    }
+
+    public List<List<NotebookSummary>> getLevels() {
+        return levels;
+    }
+
+    public List<NotebookSummary> getCriticalPath() {
+        return criticalPath;
+    }
+}
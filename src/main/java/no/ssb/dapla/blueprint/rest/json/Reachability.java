@@ -0,0 +1,35 @@
+package no.ssb.dapla.blueprint.rest.json;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The answers to a {@link ReachabilityQuery}: the ids of the reachable notebooks by dataset and by notebook, and
+ * all of them together.
+ */
+public class Reachability {
+
+    private final Map<String, List<String>> datasets;
+    private final Map<String, List<String>> notebooks;
+    private final List<String> affected;
+
+    public Reachability(Map<String, List<String>> datasets, Map<String, List<String>> notebooks,
+                        List<String> affected) {
+        this.datasets = Objects.requireNonNull(datasets);
+        this.notebooks = Objects.requireNonNull(notebooks);
+        this.affected = Objects.requireNonNull(affected);
+    }
+
+    public Map<String, List<String>> getDatasets() {
+        return datasets;
+    }
+
+    public Map<String, List<String>> getNotebooks() {
+        return notebooks;
+    }
+
+    public List<String> getAffected() {
+        return affected;
+    }
+}
@@ -0,0 +1,75 @@
+package no.ssb.dapla.blueprint.rest.json;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * A batch of reachability questions about the notebooks of a commit.
+ * <p>
+ * The notebooks reachable from each dataset and notebook are returned, restricted to the targets if any.
+ */
+public class ReachabilityQuery {
+
+    private Direction direction = Direction.DOWNSTREAM;
+    private List<String> datasets = List.of();
+    private List<String> notebooks = List.of();
+    private List<String> targets;
+
+    /**
+     * The direction of the questions, downstream if absent or null.
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Direction direction) {
+        this.direction = direction == null ? Direction.DOWNSTREAM : direction;
+    }
+
+    /**
+     * The paths of the datasets to start from.
+     */
+    public List<String> getDatasets() {
+        return datasets;
+    }
+
+    public void setDatasets(List<String> datasets) {
+        this.datasets = datasets == null ? List.of() : datasets;
+    }
+
+    /**
+     * The ids of the notebooks to start from.
+     */
+    public List<String> getNotebooks() {
+        return notebooks;
+    }
+
+    public void setNotebooks(List<String> notebooks) {
+        this.notebooks = notebooks == null ? List.of() : notebooks;
+    }
+
+    /**
+     * The ids of the notebooks the answers are restricted to, or null for all the notebooks.
+     */
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    public void setTargets(List<String> targets) {
+        this.targets = targets;
+    }
+
+    public enum Direction {
+        /**
+         * The notebooks that consume, directly or not, the datasets or what the notebooks produce.
+         */
+        @JsonProperty("downstream")
+        DOWNSTREAM,
+        /**
+         * The notebooks that produce, directly or not, the datasets or what the notebooks consume.
+         */
+        @JsonProperty("upstream")
+        UPSTREAM
+    }
+}
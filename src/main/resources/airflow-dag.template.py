@@ -28,9 +28,9 @@ default_args = {
 }
 
 dag = DAG(
-    'tutorial',
+    '${dag.id}',
     default_args=default_args,
-    description='A simple tutorial DAG',
+    description='${dag.description}',
     schedule_interval=timedelta(days=1),
 )
 
@@ -46,7 +46,7 @@ task_${notebook.id} = BashOperator(
 
 # Dependencies
 <#list dependencies as pair>
-# ${pair.producer.fileName} depends on ${pair.consumer.fileName}
+# ${pair.consumer.fileName} depends on ${pair.producer.fileName}
 task_${pair.producer.id} >> task_${pair.consumer.id}
 
 </#list>
@@ -10,6 +10,7 @@ import org.assertj.core.util.diff.DiffUtils;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
@@ -77,4 +78,22 @@ public class WebClientResponseAssert extends AbstractAssert<WebClientResponseAss
         }
         return this;
     }
+
+    public WebClientResponseAssert hasHeader(String name, String value) {
+        isNotNull();
+        var actualValue = actual.headers().first(name);
+        if (!Objects.equals(actualValue, Optional.of(value))) {
+            failWithMessage("Expected header <%s> to be <%s> but was <%s>", name, value, actualValue.orElse(null));
+        }
+        return this;
+    }
+
+    public WebClientResponseAssert doesNotHaveHeader(String name) {
+        isNotNull();
+        var actualValue = actual.headers().first(name);
+        if (actualValue.isPresent()) {
+            failWithMessage("Expected no header <%s> but was <%s>", name, actualValue.get());
+        }
+        return this;
+    }
 }
@@ -0,0 +1,139 @@
+package no.ssb.dapla.blueprint.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClosingCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private ClosingCache<String, Resource> createCache(int maxSize) {
+        return new ClosingCache<>(maxSize, Duration.ofNanos(100), now::get);
+    }
+
+    @Test
+    void testLoadsOnce() throws IOException {
+        var cache = createCache(2);
+        AtomicInteger loads = new AtomicInteger();
+
+        Resource first;
+        try (var lease = cache.acquire("a", key -> {
+            loads.incrementAndGet();
+            return new Resource(key);
+        })) {
+            first = lease.get();
+        }
+        try (var lease = cache.acquire("a", Resource::new)) {
+            assertThat(lease.get()).isSameAs(first);
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(first.closed).isZero();
+    }
+
+    @Test
+    void testClosesEvictedValuesOnceReleased() throws IOException {
+        var cache = createCache(1);
+
+        var a = cache.acquire("a", Resource::new);
+        try (var b = cache.acquire("b", Resource::new)) {
+            // Evicted but still leased.
+            assertThat(cache.size()).isEqualTo(1);
+            assertThat(a.get().closed).isZero();
+
+            Resource resource = a.get();
+            a.close();
+            assertThat(resource.closed).isEqualTo(1);
+            assertThat(b.get().closed).isZero();
+        }
+
+        // Closing twice releases once.
+        a.close();
+        assertThatThrownBy(a::get).isInstanceOf(IllegalStateException.class);
+        try (var b = cache.acquire("b", Resource::new)) {
+            assertThat(b.get().closed).isZero();
+        }
+    }
+
+    @Test
+    void testEvictsIdleValues() throws IOException {
+        var cache = createCache(2);
+
+        Resource idle;
+        try (var lease = cache.acquire("idle", Resource::new)) {
+            idle = lease.get();
+        }
+        var leased = cache.acquire("leased", Resource::new);
+
+        now.addAndGet(100);
+        try (var other = cache.acquire("other", Resource::new)) {
+            assertThat(idle.closed).isEqualTo(1);
+            // Leased values are never idle.
+            assertThat(leased.get().closed).isZero();
+            assertThat(cache.size()).isEqualTo(2);
+        }
+        leased.close();
+    }
+
+    @Test
+    void testClosesConcurrentlyLoadedValues() throws IOException {
+        var cache = createCache(2);
+        var loser = new Resource("a");
+
+        try (var winner = cache.acquire("a", key -> {
+            try (var lease = cache.acquire(key, Resource::new)) {
+                assertThat(lease.get()).isNotSameAs(loser);
+            }
+            return loser;
+        })) {
+            assertThat(winner.get()).isNotSameAs(loser);
+            assertThat(winner.get().closed).isZero();
+        }
+        assertThat(loser.closed).isEqualTo(1);
+    }
+
+    @Test
+    void testInvalidateAll() throws IOException {
+        var cache = createCache(2);
+        Resource released;
+        try (var lease = cache.acquire("a", Resource::new)) {
+            released = lease.get();
+        }
+        var leased = cache.acquire("b", Resource::new);
+
+        cache.invalidateAll();
+        assertThat(cache.size()).isZero();
+        assertThat(released.closed).isEqualTo(1);
+        assertThat(leased.get().closed).isZero();
+
+        Resource resource = leased.get();
+        leased.close();
+        assertThat(resource.closed).isEqualTo(1);
+    }
+
+    private static final class Resource implements AutoCloseable {
+
+        private final String name;
+        private int closed;
+
+        private Resource(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            closed++;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package no.ssb.dapla.blueprint.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WeightedCacheTest {
+
+    @Test
+    void testEvictsLeastRecentlyUsedByWeight() {
+        WeightedCache<String, String> cache = new WeightedCache<>(10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        assertThat(cache.getIfPresent("a")).isPresent();
+
+        cache.put("c", "cccc");
+        assertThat(cache.getIfPresent("a")).isPresent();
+        assertThat(cache.getIfPresent("b")).isEmpty();
+        assertThat(cache.getIfPresent("c")).isPresent();
+        assertThat(cache.weight()).isEqualTo(8);
+
+        // Too heavy to be cached at all.
+        cache.put("d", "ddddddddddd");
+        assertThat(cache.getIfPresent("d")).isEmpty();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testDoesNotCacheEmptyResults() {
+        WeightedCache<String, String> cache = new WeightedCache<>(10, String::length);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get("a", key -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        })).isEmpty();
+        assertThat(cache.get("a", key -> {
+            loads.incrementAndGet();
+            return Optional.of("value");
+        })).contains("value");
+        assertThat(cache.get("a", key -> Optional.of("other"))).contains("value");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testConcurrentMissesLoadOnce() throws Exception {
+        WeightedCache<String, String> cache = new WeightedCache<>(10, String::length);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Optional<String>>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("key", key -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return Optional.of("value");
+            })));
+            loading.await();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> cache.get("key", key -> {
+                    loads.incrementAndGet();
+                    return Optional.of("other");
+                })));
+            }
+            release.countDown();
+            for (Future<Optional<String>> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).contains("value");
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        WeightedCache<String, String> cache = new WeightedCache<>(10, String::length);
+        assertThatThrownBy(() -> cache.get("key", key -> {
+            throw new IllegalStateException("failed");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(cache.get("key", key -> Optional.of("value"))).contains("value");
+    }
+}
@@ -0,0 +1,112 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExecutionPlanTest {
+
+    private static List<String> paths(LineageGraph graph, int[] notebooks) {
+        return Arrays.stream(notebooks).mapToObj(graph::getPath).collect(Collectors.toList());
+    }
+
+    @Test
+    void testLevels() {
+        // a -> b -> c, a -> c, d is independent and e appends to its own output.
+        var graph = LineageGraph.builder()
+                .addNotebook("c", "blobC", List.of("/a", "/b"), List.of("/c"))
+                .addNotebook("a", "blobA", List.of("/source"), List.of("/a"))
+                .addNotebook("b", "blobB", List.of("/a"), List.of("/b"))
+                .addNotebook("d", "blobD", List.of("/other"), List.of())
+                .addNotebook("e", "blobE", List.of("/e", "/a"), List.of("/e"))
+                .build();
+        var plan = ExecutionPlan.create(graph);
+
+        assertThat(plan.hasCycles()).isFalse();
+        assertThat(plan.getCycles()).isEmpty();
+        assertThat(plan.getLevels().stream().map(level -> paths(graph, level)))
+                .containsExactly(List.of("a", "d"), List.of("b", "e"), List.of("c"));
+        assertThat(plan.getDepth()).isEqualTo(3);
+        assertThat(plan.getWidth()).isEqualTo(2);
+        assertThat(paths(graph, plan.getCriticalPath())).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void testEmpty() {
+        var plan = ExecutionPlan.create(LineageGraph.builder().build());
+
+        assertThat(plan.hasCycles()).isFalse();
+        assertThat(plan.getLevels()).isEmpty();
+        assertThat(plan.getDepth()).isZero();
+        assertThat(plan.getWidth()).isZero();
+        assertThat(plan.getCriticalPath()).isEmpty();
+    }
+
+    @Test
+    void testCycles() {
+        // a <-> b, c -> d -> e -> c and f depends on the first cycle.
+        var graph = LineageGraph.builder()
+                .addNotebook("a", "blobA", List.of("/b"), List.of("/a"))
+                .addNotebook("b", "blobB", List.of("/a"), List.of("/b"))
+                .addNotebook("c", "blobC", List.of("/e"), List.of("/c"))
+                .addNotebook("d", "blobD", List.of("/c"), List.of("/d"))
+                .addNotebook("e", "blobE", List.of("/d"), List.of("/e"))
+                .addNotebook("f", "blobF", List.of("/a"), List.of())
+                .build();
+        var plan = ExecutionPlan.create(graph);
+
+        assertThat(plan.hasCycles()).isTrue();
+        assertThat(plan.getCycles().stream().map(cycle -> paths(graph, cycle)))
+                .containsExactly(List.of("a", "b"), List.of("c", "d", "e"));
+        assertThat(plan.getLevels()).isEmpty();
+        assertThat(plan.getCriticalPath()).isEmpty();
+    }
+
+    @Test
+    void testSubset() {
+        // a -> b -> c -> d, b is not planned.
+        var graph = LineageGraph.builder()
+                .addNotebook("a", "blobA", List.of(), List.of("/a"))
+                .addNotebook("b", "blobB", List.of("/a"), List.of("/b"))
+                .addNotebook("c", "blobC", List.of("/b"), List.of("/c"))
+                .addNotebook("d", "blobD", List.of("/c"), List.of())
+                .build();
+        var notebooks = new BitSet();
+        notebooks.set(0);
+        notebooks.set(2, 4);
+        var plan = ExecutionPlan.create(graph, notebooks);
+
+        assertThat(plan.getLevels().stream().map(level -> paths(graph, level)))
+                .containsExactly(List.of("a"), List.of("c"), List.of("d"));
+        assertThat(paths(graph, plan.getCriticalPath())).containsExactly("a", "c", "d");
+    }
+
+    @Test
+    void testIgnoresCyclesOutsideOfSubset() {
+        // a -> (b <-> c) -> d.
+        var graph = LineageGraph.builder()
+                .addNotebook("a", "blobA", List.of(), List.of("/a"))
+                .addNotebook("b", "blobB", List.of("/a", "/c"), List.of("/b"))
+                .addNotebook("c", "blobC", List.of("/b"), List.of("/c"))
+                .addNotebook("d", "blobD", List.of("/c"), List.of())
+                .build();
+        var notebooks = new BitSet();
+        notebooks.set(0);
+        notebooks.set(3);
+
+        var plan = ExecutionPlan.create(graph, notebooks);
+        assertThat(plan.hasCycles()).isFalse();
+        assertThat(plan.getLevels().stream().map(level -> paths(graph, level)))
+                .containsExactly(List.of("a"), List.of("d"));
+
+        notebooks.set(1);
+        plan = ExecutionPlan.create(graph, notebooks);
+        assertThat(plan.getCycles().stream().map(cycle -> paths(graph, cycle)))
+                .containsExactly(List.of("b", "c"));
+    }
+}
@@ -0,0 +1,178 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LineageGraphTest {
+
+    /**
+     * a -> b -> c, d is independent and e reads the output of b at two paths.
+     */
+    private static LineageGraph createGraph() {
+        return LineageGraph.builder()
+                .addNotebook("c", "blobC", List.of("/b"), List.of("/c"))
+                .addNotebook("a", "blobA", List.of("/source"), List.of("/a"))
+                .addNotebook("b", "blobB", List.of("/a", "/source"), List.of("/b"))
+                .addNotebook("d", "blobD", List.of("/other"), List.of())
+                .addNotebook("e/one", "blobE", List.of("/b"), List.of())
+                .addNotebook("e/two", "blobE", List.of("/b"), List.of())
+                .build();
+    }
+
+    private static List<String> paths(LineageGraph graph, BitSet notebooks) {
+        return notebooks.stream().mapToObj(graph::getPath).collect(Collectors.toList());
+    }
+
+    @Test
+    void testIndexes() {
+        var graph = createGraph();
+
+        assertThat(graph.size()).isEqualTo(6);
+        assertThat(graph.datasetCount()).isEqualTo(5);
+        assertThat(graph.edgeCount()).isEqualTo(10);
+        assertThat(graph.getPath(0)).isEqualTo("a");
+        assertThat(graph.getBlobId(0)).isEqualTo("blobA");
+
+        var b = graph.findNotebooks("blobB");
+        assertThat(b).containsExactly(1);
+        assertThat(Arrays.stream(graph.getInputs(1)).mapToObj(graph::getDataset))
+                .containsExactly("/a", "/source");
+
+        var dataset = graph.findDataset("/b");
+        assertThat(dataset).isPresent();
+        assertThat(graph.getProducers(dataset.getAsInt())).containsExactly(1);
+        assertThat(Arrays.stream(graph.getConsumers(dataset.getAsInt())).mapToObj(graph::getPath))
+                .containsExactly("c", "e/one", "e/two");
+
+        assertThat(graph.findNotebooks("blobE")).hasSize(2);
+        assertThat(graph.findNotebooks("unknown")).isEmpty();
+        assertThat(graph.findDataset("/unknown")).isEmpty();
+    }
+
+    @Test
+    void testTraversals() {
+        var graph = createGraph();
+
+        assertThat(paths(graph, graph.forward(graph.findNotebooks("blobA"))))
+                .containsExactly("a", "b", "c", "e/one", "e/two");
+        assertThat(paths(graph, graph.forward(graph.findNotebooks("blobC")))).containsExactly("c");
+        assertThat(paths(graph, graph.backward(graph.findNotebooks("blobE"))))
+                .containsExactly("a", "b", "e/one", "e/two");
+        assertThat(paths(graph, graph.backward(graph.findNotebooks("blobD")))).containsExactly("d");
+        assertThat(paths(graph, graph.all())).hasSize(6);
+    }
+
+    @Test
+    void testTraversalTerminatesOnCycles() {
+        var graph = LineageGraph.builder()
+                .addNotebook("a", "blobA", List.of("/b"), List.of("/a"))
+                .addNotebook("b", "blobB", List.of("/a"), List.of("/b"))
+                .build();
+
+        assertThat(paths(graph, graph.forward(0))).containsExactly("a", "b");
+        assertThat(paths(graph, graph.backward(1))).containsExactly("a", "b");
+    }
+
+    @Test
+    void testWriteAndMap() throws IOException {
+        var graph = createGraph();
+        Path path = Files.createTempDirectory("dapla-blueprint-lineage-graph-test").resolve("commit.lineage");
+        try {
+            graph.write(path);
+            var mapped = LineageGraph.read(path);
+
+            assertThat(mapped.size()).isEqualTo(graph.size());
+            assertThat(mapped.datasetCount()).isEqualTo(graph.datasetCount());
+            assertThat(mapped.edgeCount()).isEqualTo(graph.edgeCount());
+            for (int notebook = 0; notebook < graph.size(); notebook++) {
+                assertThat(mapped.getPath(notebook)).isEqualTo(graph.getPath(notebook));
+                assertThat(mapped.getBlobId(notebook)).isEqualTo(graph.getBlobId(notebook));
+                assertThat(mapped.getInputs(notebook)).containsExactly(graph.getInputs(notebook));
+                assertThat(mapped.getOutputs(notebook)).containsExactly(graph.getOutputs(notebook));
+            }
+            assertThat(paths(mapped, mapped.forward(mapped.findNotebooks("blobA"))))
+                    .containsExactly("a", "b", "c", "e/one", "e/two");
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(path.getParent());
+        }
+    }
+
+    @Test
+    void testRejectsInvalidFiles() throws IOException {
+        Path path = Files.createTempFile("dapla-blueprint-lineage-graph-test", ".lineage");
+        try {
+            Files.writeString(path, "not a lineage graph");
+            assertThatThrownBy(() -> LineageGraph.read(path)).isInstanceOf(IOException.class);
+
+            // Truncated.
+            LineageGraph.builder().addNotebook("a", "blobA", List.of("/in"), List.of()).build().write(path);
+            byte[] content = Files.readAllBytes(path);
+            Files.write(path, Arrays.copyOf(content, content.length - 1));
+            assertThatThrownBy(() -> LineageGraph.read(path)).isInstanceOf(IOException.class);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Write the graph with one int of its content replaced.
+     */
+    private static void writeCorrupted(LineageGraph graph, Path path, int index, int value) throws IOException {
+        graph.write(path);
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+        content.putInt(index * Integer.BYTES, value);
+        Files.write(path, content.array());
+    }
+
+    @Test
+    void testRejectsCorruptedContent() throws IOException {
+        var graph = createGraph();
+        Path path = Files.createTempFile("dapla-blueprint-lineage-graph-test", ".lineage");
+        try {
+            // The string offsets start after the 8 ints of the header, the string ids of the paths after them.
+            graph.write(path);
+            int stringCount = ByteBuffer.wrap(Files.readAllBytes(path)).getInt(4 * Integer.BYTES);
+
+            writeCorrupted(graph, path, 8 + 1, Integer.MAX_VALUE);
+            assertThatThrownBy(() -> LineageGraph.read(path)).isInstanceOf(IOException.class);
+
+            writeCorrupted(graph, path, 8 + stringCount + 1, stringCount);
+            assertThatThrownBy(() -> LineageGraph.read(path)).isInstanceOf(IOException.class);
+
+            writeCorrupted(graph, path, 8 + stringCount + 1, -1);
+            assertThatThrownBy(() -> LineageGraph.read(path)).isInstanceOf(IOException.class);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testFindsNonAsciiNames() {
+        // "\uFB01" sorts after "\uD83D\uDE00" in UTF-16 but before it in UTF-8.
+        var names = List.of("/a", "/\u00e6", "/\uFB01", "/\uD83D\uDE00", "/z");
+        var builder = LineageGraph.builder();
+        for (String name : names) {
+            builder.addNotebook(name, "blob" + name, List.of(name), List.of());
+        }
+        var graph = builder.build();
+        for (String name : names) {
+            assertThat(graph.findDataset(name)).isPresent();
+            assertThat(graph.getDataset(graph.findDataset(name).getAsInt())).isEqualTo(name);
+            assertThat(graph.findNotebooks("blob" + name)).hasSize(1);
+        }
+        assertThat(graph.findDataset("/b")).isEmpty();
+        assertThat(graph.findNotebooks("blob")).isEmpty();
+    }
+}
@@ -0,0 +1,73 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LineageSnapshotsTest {
+
+    private Path tempPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempPath = Files.createTempDirectory("dapla-blueprint-lineage-snapshots-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempPath).sorted(Comparator.reverseOrder()).forEach(t -> {
+            try {
+                Files.delete(t);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @Test
+    void testWriteAndRead() {
+        LineageSnapshots snapshots = new LineageSnapshots(tempPath);
+        assertThat(snapshots.read("repository", "commit")).isEmpty();
+
+        snapshots.write("repository", "commit", LineageGraph.builder()
+                .addNotebook("a", "blobA", List.of("/in"), List.of("/out"))
+                .build());
+
+        assertThat(tempPath.resolve("repository").resolve("commit.lineage")).isRegularFile();
+        assertThat(snapshots.read("repository", "commit")).hasValueSatisfying(graph -> {
+            assertThat(graph.size()).isEqualTo(1);
+            assertThat(graph.getPath(0)).isEqualTo("a");
+            assertThat(graph.getBlobId(0)).isEqualTo("blobA");
+        });
+        assertThat(snapshots.read("repository", "otherCommit")).isEmpty();
+    }
+
+    @Test
+    void testIgnoresCorruptedSnapshots() throws IOException {
+        LineageSnapshots snapshots = new LineageSnapshots(tempPath);
+        Files.createDirectories(tempPath.resolve("repository"));
+        Files.writeString(tempPath.resolve("repository").resolve("commit.lineage"), "not a graph");
+
+        assertThat(snapshots.read("repository", "commit")).isEmpty();
+    }
+
+    @Test
+    void testRejectsPathsOutsideOfTheDirectory() {
+        LineageSnapshots snapshots = new LineageSnapshots(tempPath.resolve("lineage"));
+        LineageGraph graph = LineageGraph.builder().build();
+
+        assertThat(snapshots.read("..", "commit")).isEmpty();
+        assertThat(snapshots.read("repository", "../../commit")).isEmpty();
+        assertThatThrownBy(() -> snapshots.write("repository/nested", "commit", graph))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,103 @@
+package no.ssb.dapla.blueprint.lineage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReachabilityIndexTest {
+
+    /**
+     * a -> b -> c, d is independent and e reads the output of b at two paths.
+     */
+    private static LineageGraph createGraph() {
+        return LineageGraph.builder()
+                .addNotebook("c", "blobC", List.of("/b"), List.of("/c"))
+                .addNotebook("a", "blobA", List.of("/source"), List.of("/a"))
+                .addNotebook("b", "blobB", List.of("/a", "/source"), List.of("/b"))
+                .addNotebook("d", "blobD", List.of("/other"), List.of())
+                .addNotebook("e/one", "blobE", List.of("/b"), List.of())
+                .addNotebook("e/two", "blobE", List.of("/b"), List.of())
+                .build();
+    }
+
+    /**
+     * Notebook i reads /i and writes /i+1.
+     */
+    private static LineageGraph createChain(int size) {
+        var builder = LineageGraph.builder();
+        for (int i = 0; i < size; i++) {
+            builder.addNotebook("notebook" + i, "blob" + i, List.of("/" + i), List.of("/" + (i + 1)));
+        }
+        return builder.build();
+    }
+
+    private static int dataset(LineageGraph graph, String path) {
+        return graph.findDataset(path).orElseThrow();
+    }
+
+    @Test
+    void testByteSizeGrowsWithTheSquareOfTheNotebooks() {
+        var small = ReachabilityIndex.create(createChain(64));
+        var large = ReachabilityIndex.create(createChain(640));
+        // One row of 10 words per notebook, and the components.
+        assertThat(large.getByteSize()).isEqualTo(640L * 10 * Long.BYTES + 640L * Integer.BYTES);
+        assertThat(large.getByteSize()).isGreaterThan(small.getByteSize() * 50);
+    }
+
+    @Test
+    void testReaches() {
+        var graph = createGraph();
+        var index = ReachabilityIndex.create(graph);
+        int a = graph.findNotebooks("blobA")[0];
+        int c = graph.findNotebooks("blobC")[0];
+        int d = graph.findNotebooks("blobD")[0];
+
+        assertThat(index.reaches(a, c)).isTrue();
+        assertThat(index.reaches(c, a)).isFalse();
+        assertThat(index.reaches(a, a)).isTrue();
+        assertThat(index.reaches(a, d)).isFalse();
+    }
+
+    @Test
+    void testBatches() {
+        var graph = createGraph();
+        var index = ReachabilityIndex.create(graph);
+
+        assertThat(index.downstreamOfDatasets(dataset(graph, "/a")))
+                .isEqualTo(graph.forward(graph.findNotebooks("blobB")));
+        assertThat(index.upstreamOfDatasets(dataset(graph, "/b")))
+                .isEqualTo(graph.backward(graph.findNotebooks("blobB")));
+        assertThat(index.upstreamOfDatasets(dataset(graph, "/source"))).isEmpty();
+        assertThat(index.downstream(graph.findNotebooks("blobD"))).isEqualTo(graph.forward(graph.findNotebooks("blobD")));
+        assertThat(index.upstream(graph.findNotebooks("blobE"))).isEqualTo(graph.backward(graph.findNotebooks("blobE")));
+    }
+
+    @Test
+    void testMatchesTraversalsWithCycles() {
+        var random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            var builder = LineageGraph.builder();
+            int size = 1 + random.nextInt(30);
+            for (int notebook = 0; notebook < size; notebook++) {
+                builder.addNotebook("nb" + notebook, "blob" + notebook,
+                        List.of("/" + random.nextInt(size), "/" + random.nextInt(size)),
+                        List.of("/" + random.nextInt(size)));
+            }
+            var graph = builder.build();
+            var index = ReachabilityIndex.create(graph);
+
+            for (int notebook = 0; notebook < graph.size(); notebook++) {
+                BitSet forward = graph.forward(notebook);
+                assertThat(index.downstream(notebook)).isEqualTo(forward);
+                assertThat(index.upstream(notebook)).isEqualTo(graph.backward(notebook));
+                for (int other = 0; other < graph.size(); other++) {
+                    assertThat(index.reaches(notebook, other)).isEqualTo(forward.get(other));
+                }
+            }
+        }
+    }
+}
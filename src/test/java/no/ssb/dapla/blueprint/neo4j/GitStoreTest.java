@@ -0,0 +1,292 @@
+package no.ssb.dapla.blueprint.neo4j;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.BundleWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GitStoreTest {
+
+    private Path tempPath;
+    private Git remote;
+    private URI remoteUri;
+    private Config config;
+    private Config bareConfig;
+
+    @BeforeEach
+    void setUp() throws IOException, GitAPIException {
+        tempPath = Files.createTempDirectory("dapla-blueprint-git-store-test");
+        remote = Git.init().setDirectory(tempPath.resolve("remote").toFile()).call();
+        remoteUri = tempPath.resolve("remote").toUri();
+        config = createConfig("repositories", false, false);
+        bareConfig = createConfig("bare", true, false);
+    }
+
+    private Config createConfig(String folder, boolean bare, boolean pool) {
+        return Config.create(ConfigSources.create(Map.of(
+                "github.path", tempPath.resolve(folder).toString(),
+                "github.fetch.debounce", "PT0S",
+                "github.bare", String.valueOf(bare),
+                "github.pool", String.valueOf(pool)
+        )));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        remote.close();
+        Files.walk(tempPath).sorted(Comparator.reverseOrder()).forEach(t -> {
+            try {
+                Files.delete(t);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private RevCommit commit(String content) throws IOException, GitAPIException {
+        Files.writeString(tempPath.resolve("remote").resolve("notebook.ipynb"), content);
+        remote.add().addFilepattern(".").call();
+        return remote.commit().setMessage("commit").call();
+    }
+
+    private static boolean has(GitStore store, URI remote, RevCommit commit) throws IOException, GitAPIException {
+        try (var repository = store.get(remote, commit.name())) {
+            return repository.get().getObjectDatabase().has(commit);
+        }
+    }
+
+    @Test
+    void testOnlyFetchesMissingCommits() throws IOException, GitAPIException {
+        var store = new GitStore(config);
+        RevCommit first = commit("first");
+        assertThat(has(store, remoteUri, first)).isTrue();
+
+        RevCommit second = commit("second");
+        try (var repository = store.get(remoteUri, first.name())) {
+            assertThat(repository.get().getObjectDatabase().has(second)).isFalse();
+        }
+        assertThat(store.getFetchCount()).isZero();
+        assertThat(has(store, remoteUri, second)).isTrue();
+        assertThat(store.getFetchCount()).isEqualTo(1);
+
+        // Without commit, fetch once.
+        RevCommit third = commit("third");
+        try (var repository = store.get(remoteUri)) {
+            assertThat(repository.get().getObjectDatabase().has(third)).isTrue();
+        }
+        assertThat(store.getFetchCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testConcurrentFetchesAreShared() throws Exception {
+        var store = new GitStore(Config.create(ConfigSources.create(Map.of(
+                "github.path", tempPath.resolve("repositories").toString(),
+                "github.fetch.debounce", "PT0.5S"
+        ))));
+        RevCommit first = commit("first");
+        try (var repository = store.get(remoteUri)) {
+            assertThat(repository.get().getObjectDatabase().has(first)).isTrue();
+        }
+        assertThat(store.getFetchCount()).isEqualTo(1);
+
+        // The pushes arrive while the next fetch waits for the debounce.
+        RevCommit second = commit("second");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> has(store, remoteUri, second)));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(store.getFetchCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testReadsExistingClones() throws IOException, GitAPIException {
+        RevCommit commit = commit("content");
+        ObjectId blobId = remote.getRepository().resolve(commit.name() + ":notebook.ipynb");
+        try (var repository = new GitStore(config).get(remoteUri, commit.name())) {
+            assertThat(repository.get().getObjectDatabase().has(blobId)).isTrue();
+        }
+
+        // After a restart.
+        var store = new GitStore(config);
+        String repositoryId = GitStore.computeHash(remoteUri);
+        assertThat(new String(store.getBlob(repositoryId, blobId.name()), StandardCharsets.UTF_8))
+                .isEqualTo("content");
+
+        assertThatThrownBy(() -> store.getBlob(GitStore.computeHash(URI.create("file:/unknown")), blobId.name()))
+                .isInstanceOf(RepositoryNotFoundException.class);
+        assertThatThrownBy(() -> store.getBlob("../remote", blobId.name()))
+                .isInstanceOf(RepositoryNotFoundException.class);
+    }
+
+    @Test
+    void testBareRepositoriesOnlyFetchTheRef() throws IOException, GitAPIException {
+        RevCommit main = commit("main");
+        remote.checkout().setCreateBranch(true).setName("feature").call();
+        RevCommit feature = commit("feature");
+        remote.checkout().setName("master").call();
+        remote.checkout().setCreateBranch(true).setName("stale").call();
+        RevCommit stale = commit("stale");
+        remote.checkout().setName("master").call();
+        remote.tag().setName("v1").setObjectId(stale).call();
+
+        var store = new GitStore(bareConfig);
+        try (var repository = store.get(remoteUri, "refs/heads/feature", feature.name())) {
+            assertThat(repository.get().isBare()).isTrue();
+            assertThat(repository.get().getObjectDatabase().has(feature)).isTrue();
+            assertThat(repository.get().getObjectDatabase().has(stale)).isFalse();
+            assertThat(repository.get().getRefDatabase().getRefs()).extracting(Ref::getName)
+                    .containsExactly("refs/remotes/origin/feature");
+        }
+
+        // The default branch of the remote.
+        try (var repository = store.get(remoteUri, null, main.name())) {
+            assertThat(repository.get().getObjectDatabase().has(main)).isTrue();
+            assertThat(repository.get().getObjectDatabase().has(stale)).isFalse();
+        }
+
+        // Blobs of bare repositories.
+        ObjectId blobId = remote.getRepository().resolve(feature.name() + ":notebook.ipynb");
+        byte[] blob = new GitStore(bareConfig).getBlob(GitStore.computeHash(remoteUri), blobId.name());
+        assertThat(new String(blob, StandardCharsets.UTF_8)).isEqualTo("feature");
+    }
+
+    @Test
+    void testRefSpecs() {
+        assertThat(GitStore.toRefSpec("refs/heads/feature/one")).hasToString(
+                "+refs/heads/feature/one:refs/remotes/origin/feature/one");
+        assertThat(GitStore.toRefSpec("refs/tags/v1")).hasToString("+refs/tags/v1:refs/tags/v1");
+        assertThat(GitStore.toRefSpec(null)).hasToString("+HEAD:refs/remotes/origin/HEAD");
+        assertThat(GitStore.toRefSpec("refs/heads/../x")).hasToString("+HEAD:refs/remotes/origin/HEAD");
+        assertThat(GitStore.toRefSpec("main")).hasToString("+HEAD:refs/remotes/origin/HEAD");
+    }
+
+    @Test
+    void testForksSharePools() throws IOException, GitAPIException {
+        RevCommit base = commit("base");
+        Path forkPath = tempPath.resolve("fork");
+        URI forkUri = forkPath.toUri();
+        RevCommit forked;
+        try (Git fork = Git.cloneRepository().setURI(remoteUri.toString()).setDirectory(forkPath.toFile()).call()) {
+            Files.writeString(forkPath.resolve("notebook.ipynb"), "fork");
+            fork.add().addFilepattern(".").call();
+            forked = fork.commit().setMessage("fork").call();
+        }
+
+        var store = new GitStore(createConfig("pooled", true, true));
+        try (var repository = store.get(remoteUri, null, base.name())) {
+            assertThat(repository.get().getObjectDatabase().has(base)).isTrue();
+        }
+        try (var repository = store.get(forkUri, "refs/heads/master", forked.name())) {
+            assertThat(repository.get().getObjectDatabase().has(forked)).isTrue();
+        }
+
+        // One pool, named after the root commit, has all the objects.
+        Path pool = tempPath.resolve("pooled").resolve("pools").resolve(base.name());
+        try (Git git = Git.open(pool.toFile())) {
+            assertThat(git.getRepository().getObjectDatabase().has(forked)).isTrue();
+        }
+        for (URI uri : List.of(remoteUri, forkUri)) {
+            Path objects = tempPath.resolve("pooled").resolve(GitStore.computeHash(uri)).resolve("objects");
+            assertThat(objects.resolve("pack").toFile().list()).isEmpty();
+            assertThat(Files.readAllLines(objects.resolve("info").resolve("alternates")))
+                    .containsExactly(Path.of("..", "..", "pools", base.name(), "objects").toString());
+        }
+
+        // After a restart.
+        ObjectId blobId = remote.getRepository().resolve(base.name() + ":notebook.ipynb");
+        var restarted = new GitStore(createConfig("pooled", true, true));
+        byte[] blob = restarted.getBlob(GitStore.computeHash(forkUri), blobId.name());
+        assertThat(new String(blob, StandardCharsets.UTF_8)).isEqualTo("base");
+    }
+
+    @Test
+    void testResumesInterruptedInitialization() throws IOException, GitAPIException {
+        RevCommit base = commit("base");
+        // Stopped after the bare repository was created, before it was fetched and joined its pool.
+        Path directory = tempPath.resolve("pooled").resolve(GitStore.computeHash(remoteUri));
+        Git.init().setBare(true).setDirectory(directory.toFile()).call().close();
+
+        var store = new GitStore(createConfig("pooled", true, true));
+        try (var repository = store.get(remoteUri, null, base.name())) {
+            assertThat(repository.get().getObjectDatabase().has(base)).isTrue();
+            assertThat(repository.get().getConfig().getString("remote", "origin", "url"))
+                    .isEqualTo(remoteUri.toASCIIString());
+        }
+        Path objects = directory.resolve("objects");
+        assertThat(objects.resolve("pack").toFile().list()).isEmpty();
+        assertThat(Files.readAllLines(objects.resolve("info").resolve("alternates")))
+                .containsExactly(Path.of("..", "..", "pools", base.name(), "objects").toString());
+    }
+
+    @Test
+    void testSeedsFromBundles() throws IOException, GitAPIException {
+        RevCommit base = commit("base");
+
+        // A backup with a commit the remote does not have.
+        Path backupPath = tempPath.resolve("backup");
+        Path bundle = tempPath.resolve("backup.bundle");
+        RevCommit backedUp;
+        try (Git backup = Git.cloneRepository().setURI(remoteUri.toString()).setDirectory(backupPath.toFile()).call()) {
+            Files.writeString(backupPath.resolve("notebook.ipynb"), "backup");
+            backup.add().addFilepattern(".").call();
+            backedUp = backup.commit().setMessage("backup").call();
+            BundleWriter writer = new BundleWriter(backup.getRepository());
+            writer.include(backup.getRepository().exactRef("refs/heads/master"));
+            try (var output = Files.newOutputStream(bundle)) {
+                writer.writeBundle(NullProgressMonitor.INSTANCE, output);
+            }
+        }
+        RevCommit pushed = commit("pushed");
+
+        for (boolean bare : List.of(true, false)) {
+            var store = new GitStore(Config.create(ConfigSources.create(Map.of(
+                    "github.path", tempPath.resolve("seeded-" + bare).toString(),
+                    "github.fetch.debounce", "PT0S",
+                    "github.bare", String.valueOf(bare),
+                    "github.seeds.0.remote", remoteUri.toString(),
+                    "github.seeds.0.path", bundle.toString()
+            ))));
+            try (var repository = store.get(remoteUri, "refs/heads/master", pushed.name())) {
+                assertThat(repository.get().getObjectDatabase().has(base)).isTrue();
+                assertThat(repository.get().getObjectDatabase().has(backedUp)).isTrue();
+                assertThat(repository.get().getObjectDatabase().has(pushed)).isTrue();
+                assertThat(repository.get().getConfig().getString("remote", "origin", "url"))
+                        .isEqualTo(remoteUri.toASCIIString());
+            }
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package no.ssb.dapla.blueprint.neo4j;
 
 import no.ssb.dapla.blueprint.EmbeddedNeo4jExtension;
+import no.ssb.dapla.blueprint.lineage.LineageGraph;
 import no.ssb.dapla.blueprint.neo4j.model.*;
+import no.ssb.dapla.blueprint.neo4j.projection.CommitRow;
+import no.ssb.dapla.blueprint.neo4j.projection.FileRow;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.neo4j.ogm.session.Session;
 import org.neo4j.ogm.session.SessionFactory;
+import org.neo4j.ogm.transaction.Transaction;
 
 import java.net.URI;
+import java.nio.file.Path;
 import java.time.Instant;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -39,10 +48,88 @@ class NotebookStoreTest {
     );
 
     private NotebookStore store;
+    private SessionFactory factory;
 
     @BeforeEach
     void setUp(SessionFactory factory) {
+        this.factory = factory;
         store = new NotebookStore(factory);
+        store.createSchema();
+        store.purgeDatabase();
+    }
+
+    @Test
+    void testCreateSchemaTwice() {
+        store.createSchema();
+        var names = new HashSet<String>();
+        factory.openSession().query("CALL db.indexes() YIELD name RETURN name", Map.of())
+                .forEach(row -> names.add((String) row.get("name")));
+        assertThat(names).contains("repository_id", "commit_id", "notebook_blob_id", "dataset_path");
+    }
+
+    private static Commit createLargeCommit() {
+        Commit commit = new Commit("largeCommitId");
+        commit.setAuthorName("Hadrien");
+        commit.setAuthoredAt(Instant.ofEpochMilli(0));
+        commit.setAuthorEmail("hadrien@ssb.no");
+        commit.setCommitterName("Arild");
+        commit.setCommittedAt(Instant.ofEpochMilli(10));
+        commit.setCommitterEmail("arild@ssb.no");
+        commit.setMessage("commit message");
+
+        for (int i = 0; i < 10; i++) {
+            Notebook notebook = new Notebook("notebook" + i);
+            notebook.addInputs(i % 2 == 0 ? DS_ONE : DS_TWO);
+            notebook.addOutputs(new Dataset("/ds/output/" + i));
+            switch (i % 3) {
+                case 0 -> commit.addCreate("created/" + i, notebook);
+                // Replaces the notebook before it.
+                case 1 -> commit.addUpdate("updated/" + i, notebook, "notebook" + (i - 1));
+                default -> commit.addUnchanged("unchanged/" + i, notebook);
+            }
+        }
+        // Same notebook at two paths.
+        commit.addUnchanged("unchanged/copy", new Notebook("notebook0"));
+        commit.addDelete("deleted/0", new Notebook("deletedNotebook"));
+        return commit;
+    }
+
+    /**
+     * Return the nodes and relationships of the database in a comparable form.
+     */
+    private List<String> dumpGraph() {
+        Session session = factory.openSession();
+        List<String> graph = new ArrayList<>();
+        session.query("MATCH (n) RETURN labels(n) AS labels, properties(n) AS properties", Map.of())
+                .queryResults().forEach(row -> graph.add(row.get("labels") + " " + new TreeMap<>(
+                        (Map<String, ?>) row.get("properties"))));
+        session.query("""
+                MATCH (a)-[r]->(b)
+                RETURN coalesce(a.id, a.blobId) AS start, type(r) AS type, properties(r) AS properties,
+                       coalesce(b.blobId, b.path) AS end
+                """, Map.of()).queryResults().forEach(row -> graph.add(row.get("start") + " " + row.get("type")
+                + new TreeMap<>((Map<String, ?>) row.get("properties")) + " " + row.get("end")));
+        Collections.sort(graph);
+        return graph;
+    }
+
+    @Test
+    void testWriteCommitMatchesSave() {
+        store.saveCommit(createLargeCommit());
+        List<String> saved = dumpGraph();
+        assertThat(saved).isNotEmpty();
+
+        store.purgeDatabase();
+        store.writeCommit(createLargeCommit());
+        assertThat(dumpGraph()).containsExactlyElementsOf(saved);
+
+        // Several chunks per statement and idempotent.
+        Session session = factory.openSession();
+        try (Transaction transaction = session.beginTransaction(Transaction.Type.READ_WRITE)) {
+            new CommitWriter(3).write(session, createLargeCommit());
+            transaction.commit();
+        }
+        assertThat(dumpGraph()).containsExactlyElementsOf(saved);
     }
 
     @Test
@@ -111,4 +198,164 @@ class NotebookStoreTest {
                 .contains(notebook2);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSaveCommitToRepository() {
+        Repository repository = new Repository(URI.create("http://example.com/git/repo"));
+        Commit first = new Commit("firstCommitId");
+        first.addCreate("foo/bar", new Notebook("firstNotebookId"));
+        repository.addCommit(first);
+        store.saveRepository(repository);
+
+        // A repository instance that does not know about the first commit.
+        Commit second = new Commit("secondCommitId");
+        second.addUnchanged("foo/bar", new Notebook("firstNotebookId"));
+        second.addCreate("bar/foo", new Notebook("secondNotebookId"));
+        store.saveCommit(new Repository(URI.create("http://example.com/git/repo")), second);
+
+        assertThat(store.getCommits(repository.getId())).hasValueSatisfying(commits ->
+                assertThat(commits).extracting(Commit::getId)
+                        .containsExactlyInAnyOrder("firstCommitId", "secondCommitId"));
+        Optional<Commit> persistedCommit = store.getCommit(repository.getId(), "secondCommitId");
+        assertThat(persistedCommit).isNotEmpty();
+        assertThat(persistedCommit.get().getCreates()).extracting(CommittedFile::getPath)
+                .containsExactly(Path.of("bar/foo"));
+        assertThat(persistedCommit.get().getUnchanged()).extracting(CommittedFile::getPath)
+                .containsExactly(Path.of("foo/bar"));
+        assertThat(store.getRepositories()).extracting(Repository::getUri)
+                .containsExactly(URI.create("http://example.com/git/repo"));
+    }
+
+    @Test
+    void testGetCommitsPages() {
+        Repository repository = new Repository(URI.create("http://example.com/git/repo"));
+        // Commits at the same time, b and c, are ordered by id.
+        Map<String, Integer> times = Map.of("a", 1, "b", 2, "c", 2, "d", 3, "e", 4);
+        times.forEach((id, time) -> {
+            Commit commit = new Commit(id);
+            commit.setCommittedAt(Instant.ofEpochSecond(time));
+            commit.addCreate("notebook", new Notebook("notebook"));
+            store.saveCommit(repository, commit);
+        });
+        Commit undated = new Commit("undated");
+        undated.addCreate("notebook", new Notebook("notebook"));
+        store.saveCommit(repository, undated);
+        // A commit of another repository between b and d.
+        Commit other = new Commit("other");
+        other.setCommittedAt(Instant.ofEpochSecond(2));
+        store.saveCommit(new Repository(URI.create("http://example.com/git/other")), other);
+
+        assertThat(store.getCommits(repository.getId(), 2, null)).hasValueSatisfying(commits ->
+                assertThat(commits).extracting(CommitRow::getId).containsExactly("e", "d"));
+        assertThat(store.getCommits(repository.getId(), 2, "d")).hasValueSatisfying(commits ->
+                assertThat(commits).extracting(CommitRow::getId).containsExactly("c", "b"));
+        assertThat(store.getCommits(repository.getId(), 2, "b")).hasValueSatisfying(commits ->
+                assertThat(commits).extracting(CommitRow::getId).containsExactly("a"));
+        assertThat(store.getCommits(repository.getId(), 2, "a")).hasValueSatisfying(commits ->
+                assertThat(commits).isEmpty());
+        assertThat(store.getCommits(repository.getId(), 2, "other")).hasValueSatisfying(commits ->
+                assertThat(commits).isEmpty());
+        assertThat(store.getCommits("unknownRepository", 2, null)).isEmpty();
+    }
+
+    @Test
+    void testConcurrentReadsAndWrites() throws Exception {
+        Repository repository = new Repository(URI.create("http://example.com/git/repo"));
+        int commits = 20;
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < commits; i++) {
+                Commit commit = new Commit("commit" + i);
+                Notebook notebook = new Notebook("notebook" + i);
+                notebook.addInputs(DS_ONE);
+                notebook.addOutputs(DS_TWO);
+                commit.addCreate("notebook" + i, notebook);
+                commit.addUnchanged("shared", new Notebook("sharedNotebook"));
+
+                futures.add(executor.submit(() -> store.saveCommit(repository, commit)));
+                futures.add(executor.submit(() -> store.getCommits(repository.getId())));
+                futures.add(executor.submit(() -> store.getCommit(repository.getId(), commit.getId())));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(store.getCommits(repository.getId())).hasValueSatisfying(persisted ->
+                assertThat(persisted).hasSize(commits));
+        for (int i = 0; i < commits; i++) {
+            assertThat(store.getCommit(repository.getId(), "commit" + i)).hasValueSatisfying(commit -> {
+                assertThat(commit.getCreates()).hasSize(1);
+                assertThat(commit.getUnchanged()).hasSize(1);
+            });
+        }
+    }
+
+    @Test
+    void testGetLineage() {
+        Repository repository = new Repository(URI.create("http://example.com/git/repo"));
+        store.saveCommit(repository, createLargeCommit());
+
+        assertThat(store.getLineage(repository.getId(), "unknownCommit")).isEmpty();
+        assertThat(store.getLineage("unknownRepository", "largeCommitId")).isEmpty();
+
+        LineageGraph graph = store.getLineage(repository.getId(), "largeCommitId").orElseThrow();
+        // Deleted files are not part of the lineage.
+        assertThat(graph.size()).isEqualTo(11);
+        assertThat(graph.findNotebooks("deletedNotebook")).isEmpty();
+        assertThat(graph.findNotebooks("notebook0")).hasSize(2);
+
+        int notebook = graph.findNotebooks("notebook3")[0];
+        assertThat(graph.getPath(notebook)).isEqualTo("updated/3");
+        assertThat(Arrays.stream(graph.getInputs(notebook)).mapToObj(graph::getDataset))
+                .containsExactly("/ds/two/four", "/ds/two/one", "/ds/two/three", "/ds/two/two");
+        assertThat(Arrays.stream(graph.getOutputs(notebook)).mapToObj(graph::getDataset))
+                .containsExactly("/ds/output/3");
+
+        // Empty commits have an empty lineage.
+        Commit empty = new Commit("emptyCommit");
+        store.saveCommit(repository, empty);
+        assertThat(store.getLineage(repository.getId(), "emptyCommit"))
+                .hasValueSatisfying(lineage -> assertThat(lineage.size()).isZero());
+    }
+
+    @Test
+    void testGetCommitRowAndFiles() {
+        Repository repository = new Repository(URI.create("http://example.com/git/repo"));
+        store.saveCommit(repository, createLargeCommit());
+
+        assertThat(store.getCommitRow(repository.getId(), "unknownCommit")).isEmpty();
+        assertThat(store.getCommitRow("unknownRepository", "largeCommitId")).isEmpty();
+        CommitRow commit = store.getCommitRow(repository.getId(), "largeCommitId").orElseThrow();
+        assertThat(commit.getAuthorName()).isEqualTo("Hadrien");
+        assertThat(commit.getAuthoredAt()).isEqualTo(Instant.ofEpochMilli(0));
+        assertThat(commit.getCommitterEmail()).isEqualTo("arild@ssb.no");
+        assertThat(commit.getCommittedAt()).isEqualTo(Instant.ofEpochMilli(10));
+        assertThat(commit.getMessage()).isEqualTo("commit message");
+
+        assertThat(store.getFiles(repository.getId(), "unknownCommit")).isEmpty();
+        assertThat(store.getFiles("unknownRepository", "largeCommitId")).isEmpty();
+        List<FileRow> files = store.getFiles(repository.getId(), "largeCommitId").orElseThrow();
+        assertThat(files).extracting(FileRow::getPath).isSorted().hasSize(12);
+        assertThat(files).filteredOn(file -> file.getChange() == FileRow.Change.DELETES)
+                .extracting(FileRow::getBlobId).containsExactly("deletedNotebook");
+
+        FileRow file = files.stream().filter(row -> row.getPath().equals("updated/3")).findFirst().orElseThrow();
+        assertThat(file.getChange()).isEqualTo(FileRow.Change.UPDATES);
+        assertThat(file.getBlobId()).isEqualTo("notebook3");
+        assertThat(file.getInputs()).containsExactly("/ds/two/four", "/ds/two/one", "/ds/two/three", "/ds/two/two");
+        assertThat(file.getOutputs()).containsExactly("/ds/output/3");
+        assertThat(file.getPreviousOutputs()).containsExactly("/ds/output/2");
+        assertThat(files).filteredOn(row -> row.getChange() != FileRow.Change.UPDATES)
+                .allSatisfy(row -> assertThat(row.getPreviousOutputs()).isEmpty());
+
+        // Empty commits have no files.
+        store.saveCommit(repository, new Commit("emptyCommit"));
+        assertThat(store.getFiles(repository.getId(), "emptyCommit")).hasValueSatisfying(rows ->
+                assertThat(rows).isEmpty());
+    }
+}
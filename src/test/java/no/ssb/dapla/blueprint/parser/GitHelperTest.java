@@ -0,0 +1,118 @@
+package no.ssb.dapla.blueprint.parser;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitHelperTest {
+
+    private Path tempPath;
+    private Git git;
+
+    @BeforeEach
+    void setUp() throws IOException, GitAPIException {
+        tempPath = Files.createTempDirectory("dapla-blueprint-git-helper-test");
+        git = Git.init().setDirectory(tempPath.toFile()).call();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        git.close();
+        Files.walk(tempPath).sorted(Comparator.reverseOrder()).forEach(t -> {
+            try {
+                Files.delete(t);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private RevCommit commit(Map<String, String> files) throws IOException, GitAPIException {
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Path path = tempPath.resolve(file.getKey());
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, file.getValue());
+        }
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage("commit").call();
+    }
+
+    @Test
+    void testWalkNotebooksWithoutCheckout() throws IOException, GitAPIException {
+        RevCommit first = commit(Map.of(
+                "should/visitThis/file.ipynb", "first",
+                "should/ignoreThis/file.ipynb", "ignored",
+                "should/notVisit/file.txt", "text"
+        ));
+        commit(Map.of("should/visitThis/file.ipynb", "second", "should/visitThat/file.ipynb", "that"));
+
+        GitHelper helper = new GitHelper(git.getRepository());
+        Map<Path, String> notebooks = new LinkedHashMap<>();
+        helper.walkNotebooks(first.getName(), Set.of("ignoreThis"), (path, blobId, content) ->
+                notebooks.put(path, new String(content.readAllBytes(), StandardCharsets.UTF_8)));
+
+        // The work tree contains the second commit but we read the first one.
+        assertThat(notebooks).containsExactly(
+                Map.entry(Path.of("should/visitThis/file.ipynb"), "first")
+        );
+    }
+
+    @Test
+    void testGetNotebookBlobs() throws IOException, GitAPIException {
+        RevCommit commit = commit(Map.of(
+                "b.ipynb", "b",
+                "a/file.ipynb", "a file",
+                "a/ignoreThis/file.ipynb", "ignored",
+                "a/file.txt", "text"
+        ));
+
+        GitHelper helper = new GitHelper(git.getRepository());
+        var blobs = helper.getNotebookBlobs(commit.getName(), Set.of("ignoreThis"));
+
+        assertThat(blobs.keySet()).containsExactly(Path.of("a/file.ipynb"), Path.of("b.ipynb"));
+        var blob = blobs.get(Path.of("a/file.ipynb"));
+        assertThat(blob.getSize()).isEqualTo("a file".length());
+        assertThat(blob.getMode()).isEqualTo(FileMode.REGULAR_FILE);
+        assertThat(blob.getBlobId()).isEqualTo(helper.getObjectId(commit.getName(), Path.of("a/file.ipynb")));
+    }
+
+    @Test
+    void testDiffNotebooks() throws IOException, GitAPIException {
+        RevCommit first = commit(Map.of(
+                "same/file.ipynb", "same",
+                "changed.ipynb", "before",
+                "removed.ipynb", "removed",
+                "ignoreThis/file.ipynb", "ignored"
+        ));
+        git.rm().addFilepattern("removed.ipynb").call();
+        commit(Map.of("changed.ipynb", "after", "ignoreThis/file.ipynb", "still ignored"));
+        RevCommit third = commit(Map.of("added.ipynb", "added", "file.txt", "text"));
+
+        GitHelper helper = new GitHelper(git.getRepository());
+        var diff = helper.diffNotebooks(first.getName(), third.getName(), Set.of("ignoreThis"));
+
+        assertThat(diff.getChanged().keySet()).containsExactlyInAnyOrder(
+                Path.of("added.ipynb"), Path.of("changed.ipynb"));
+        assertThat(diff.getChanged().get(Path.of("changed.ipynb")).getBlobId())
+                .isEqualTo(helper.getObjectId(third.getName(), Path.of("changed.ipynb")));
+        assertThat(diff.getRemoved()).containsExactly(Path.of("removed.ipynb"));
+
+        assertThat(helper.getFirstParents(third.getName(), 10)).hasSize(2).endsWith(first.getName());
+        assertThat(helper.getFirstParents(third.getName(), 1)).hasSize(1);
+    }
+}
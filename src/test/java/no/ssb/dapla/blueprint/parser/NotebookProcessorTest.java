@@ -4,7 +4,9 @@ import no.ssb.dapla.blueprint.neo4j.model.Dataset;
 import no.ssb.dapla.blueprint.neo4j.model.Notebook;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -58,4 +60,39 @@ class NotebookProcessorTest {
         assertThat(notebook.getOutputs()).isNotEmpty();
         assertThat(notebook.getOutputs().size()).isEqualTo(3);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSkipsOutputsAndMetadata() throws IOException {
+        // Outputs, attachments and metadata placed before the source must be skipped, whatever their content.
+        var content = """
+                {
+                  "metadata": { "cells": { "source": ["%%input", "/not/a/dataset"] } },
+                  "cells": [
+                    {
+                      "cell_type": "code",
+                      "outputs": [ { "data": { "image/png": "iVBORw0KGgo=", "source": ["#!inputs"] } } ],
+                      "attachments": { "plot.png": { "image/png": "iVBORw0KGgo=" } },
+                      "metadata": { "source": [ "%%output", "/not/a/dataset" ] },
+                      "source": [ "%%input\n", "/some/input\n", "  \n", "/some/other/input" ]
+                    },
+                    {
+                      "cell_type": "code",
+                      "source": [ "print('hello')\n", "#!outputs\n", "# /some/output\n", "x = 1\n", "# /not/a/dataset" ],
+                      "outputs": [ { "text": [ "#!inputs", "# /not/a/dataset" ] } ]
+                    },
+                    {
+                      "cell_type": "markdown",
+                      "source": []
+                    }
+                  ],
+                  "nbformat": 4
+                }
+                """;
+
+        Notebook notebook = processor.process(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        assertThat(notebook.getInputs()).extracting(Dataset::getPath).extracting(Path::toString)
+                .containsExactlyInAnyOrder("/some/input", "/some/other/input");
+        assertThat(notebook.getOutputs()).extracting(Dataset::getPath).extracting(Path::toString)
+                .containsExactlyInAnyOrder("/some/output");
+    }
+}
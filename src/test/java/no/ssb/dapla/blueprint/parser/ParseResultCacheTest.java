@@ -0,0 +1,86 @@
+package no.ssb.dapla.blueprint.parser;
+
+import io.helidon.metrics.RegistryFactory;
+import no.ssb.dapla.blueprint.neo4j.model.Dataset;
+import no.ssb.dapla.blueprint.neo4j.model.Notebook;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParseResultCacheTest {
+
+    private Path tempPath;
+    private MetricRegistry registry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempPath = Files.createTempDirectory("dapla-blueprint-parse-cache-test");
+        registry = RegistryFactory.create().getRegistry(MetricRegistry.Type.APPLICATION);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.walk(tempPath).sorted(Comparator.reverseOrder()).forEach(t -> {
+            try {
+                Files.delete(t);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private static Notebook notebook(String blobId) {
+        Notebook notebook = new Notebook(blobId);
+        notebook.addInputs(new Dataset("/some/input"), new Dataset("/some/other/input"));
+        notebook.addOutputs(new Dataset("/some/output"));
+        return notebook;
+    }
+
+    @Test
+    void testMemoryIsBounded() {
+        ParseResultCache cache = new ParseResultCache(2, null, registry);
+        cache.put("aaaa", notebook("aaaa"));
+        cache.put("bbbb", notebook("bbbb"));
+
+        // Use aaaa so that bbbb is the least recently used.
+        assertThat(cache.get("aaaa")).isPresent();
+        cache.put("cccc", notebook("cccc"));
+
+        assertThat(cache.get("aaaa")).isPresent();
+        assertThat(cache.get("bbbb")).isEmpty();
+        assertThat(cache.get("cccc")).isPresent();
+
+        assertThat(registry.counter("parser.cache.memory.hits").getCount()).isEqualTo(3);
+        assertThat(registry.counter("parser.cache.misses").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testDiskSurvivesRestart() {
+        String blobId = "0123456789abcdef0123456789abcdef01234567";
+        new ParseResultCache(10, tempPath, registry).put(blobId, notebook(blobId));
+
+        ParseResultCache restarted = new ParseResultCache(10, tempPath, registry);
+        var result = restarted.get(blobId);
+        assertThat(result).isPresent();
+        assertThat(result.get().getInputs()).containsExactlyInAnyOrder("/some/input", "/some/other/input");
+        assertThat(result.get().getOutputs()).containsExactly("/some/output");
+
+        Notebook notebook = result.get().toNotebook(blobId);
+        assertThat(notebook.getBlobId()).isEqualTo(blobId);
+        assertThat(notebook.getInputs()).extracting(Dataset::getPath).extracting(Path::toString)
+                .containsExactlyInAnyOrder("/some/input", "/some/other/input");
+
+        // Loaded from disk once, then from memory.
+        assertThat(restarted.get(blobId)).isPresent();
+        assertThat(registry.counter("parser.cache.disk.hits").getCount()).isEqualTo(1);
+        assertThat(registry.counter("parser.cache.memory.hits").getCount()).isEqualTo(1);
+    }
+}
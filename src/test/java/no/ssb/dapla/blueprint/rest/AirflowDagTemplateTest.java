@@ -0,0 +1,85 @@
+package no.ssb.dapla.blueprint.rest;
+
+import no.ssb.dapla.blueprint.rest.json.DirectedAcyclicGraph;
+import no.ssb.dapla.blueprint.rest.json.NotebookDetail;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AirflowDagTemplateTest {
+
+    private static String render(AirflowDagTemplate template, List<NotebookDetail> notebooks) throws IOException {
+        StringWriter writer = new StringWriter();
+        template.render(writer, "blueprint_repository", "Notebooks of commit", new DirectedAcyclicGraph(notebooks));
+        return writer.toString();
+    }
+
+    @Test
+    void testRender() throws IOException {
+        var template = AirflowDagTemplate.parse("""
+                dag = DAG('${dag.id}', description='${dag.description}')
+                <#list notebooks as notebook>
+                task_${notebook.id} = BashOperator(task_id='${notebook.id}', bash_command='run ${notebook.path}')
+                </#list>
+                <#list dependencies as pair>
+                task_${pair.producer.id} >> task_${pair.consumer.id}
+                </#list>
+                """);
+
+        var rendered = render(template, List.of(
+                new NotebookDetail("repository", "commit", "a/one.ipynb", "nb1", Set.of("/a"), Set.of("/b")),
+                new NotebookDetail("repository", "commit", "two.ipynb", "nb2", Set.of("/b"), Set.of()),
+                new NotebookDetail("repository", "commit", "copy/one.ipynb", "nb1", Set.of("/a"), Set.of("/b"))
+        ));
+
+        assertThat(rendered).isEqualTo("""
+                dag = DAG('blueprint_repository', description='Notebooks of commit')
+                task_nb1 = BashOperator(task_id='nb1', bash_command='run a/one.ipynb')
+                task_nb2 = BashOperator(task_id='nb2', bash_command='run two.ipynb')
+                task_nb1 >> task_nb2
+                """);
+    }
+
+    @Test
+    void testSanitizesValues() throws IOException {
+        var template = AirflowDagTemplate.parse("""
+                <#list notebooks as notebook>
+                bash_command='echo "${notebook.fileName}"'
+                </#list>
+                """);
+
+        var rendered = render(template, List.of(
+                new NotebookDetail("repository", "commit", "it's \"$(rm -rf).ipynb", "nb1", Set.of(), Set.of())
+        ));
+
+        assertThat(rendered).isEqualTo("bash_command='echo \"it_s __(rm -rf).ipynb\"'\n");
+    }
+
+    @Test
+    void testUnknownVariables() {
+        var template = AirflowDagTemplate.parse("${dag.unknown}");
+        assertThatThrownBy(() -> render(template, List.of())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testDefaultTemplate() throws IOException {
+        var rendered = render(AirflowDagTemplate.load(), List.of(
+                new NotebookDetail("repository", "commit", "a/one.ipynb", "nb1", Set.of("/a"), Set.of("/b")),
+                new NotebookDetail("repository", "commit", "two.ipynb", "nb2", Set.of("/b"), Set.of())
+        ));
+
+        assertThat(rendered)
+                .contains("'blueprint_repository'")
+                .contains("task_nb1 = BashOperator(")
+                .contains("task_nb2 = BashOperator(")
+                .contains("# two.ipynb depends on one.ipynb")
+                .contains("task_nb1 >> task_nb2")
+                .doesNotContain("<#", "${");
+    }
+}
@@ -18,6 +18,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -98,9 +99,11 @@ class BlueprintServiceTest {
         var commit3 = new Commit("commit3");
         commit3.setAuthorName("Hadrien");
         commit3.setAuthoredAt(Instant.ofEpochMilli(0));
+        commit3.setCommittedAt(Instant.ofEpochMilli(0));
         var commit4 = new Commit("commit4");
         commit4.setAuthorName("Arild");
         commit4.setAuthoredAt(Instant.ofEpochMilli(1000));
+        commit4.setCommittedAt(Instant.ofEpochMilli(1000));
         repository.addCommit(commit3);
         repository.addCommit(commit4);
 
@@ -114,7 +117,7 @@ class BlueprintServiceTest {
                        "authoredAt" : 1.0,
                        "committerName" : null,
                        "committerEmail" : null,
-                       "committedAt" : null,
+                       "committedAt" : 1.0,
                        "createdAt" : 1.0,
                        "message" : null
                      }, {
@@ -124,7 +127,7 @@ class BlueprintServiceTest {
                        "authoredAt" : 0.0,
                        "committerName" : null,
                        "committerEmail" : null,
-                       "committedAt" : null,
+                       "committedAt" : 0.0,
                        "createdAt" : 0.0,
                        "message" : null
                      } ]
@@ -147,6 +150,34 @@ class BlueprintServiceTest {
                 .hasStatus(Http.Status.OK_200)
                 .hasJsonContent(expectedResponse);
 
+        // Pages are linked.
+        response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits")
+                .queryParam("limit", "1")
+                .accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .hasHeader(Http.Header.LINK, "</api/v1/repositories/" + repository.getId()
+                        + "/commits?limit=1&after=commit4>; rel=\"next\"");
+
+        response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits")
+                .queryParam("limit", "1")
+                .queryParam("after", "commit4")
+                .accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .doesNotHaveHeader(Http.Header.LINK);
+
+        response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits")
+                .queryParam("limit", "0")
+                .accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await()).hasStatus(Http.Status.BAD_REQUEST_400);
+
         response = client.get()
                 .path("/api/v1/repositories/DOESNOTEXIST/commits")
                 .accept(BlueprintService.APPLICATION_REVISION_JSON).submit();
@@ -212,15 +243,15 @@ class BlueprintServiceTest {
                 .hasStatus(Http.Status.OK_200)
                 .hasJsonContent("""
                         [{
-                            "id": "nb2",
-                            "commitId": "commit1",
-                            "path": "foo/bar",
-                            "fetchUrl": "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit1/notebooks/nb2"
-                        }, {
                             "id": "nb1",
                             "commitId": "commit1",
                             "path": "foo",
                             "fetchUrl": "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit1/notebooks/nb1"
+                        }, {
+                            "id": "nb2",
+                            "commitId": "commit1",
+                            "path": "foo/bar",
+                            "fetchUrl": "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit1/notebooks/nb2"
                         }]
                         """);
 
@@ -232,15 +263,15 @@ class BlueprintServiceTest {
                 .hasStatus(Http.Status.OK_200)
                 .hasJsonContent("""
                         [{
-                            "id": "nb2",
-                            "commitId": "commit2",
-                            "path": "foo/bar",
-                            "fetchUrl": "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit2/notebooks/nb2"
-                        }, {
                             "id": "nb1",
                             "commitId": "commit2",
                             "path": "foo",
                             "fetchUrl": "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit2/notebooks/nb1"
+                        }, {
+                            "id": "nb2",
+                            "commitId": "commit2",
+                            "path": "foo/bar",
+                            "fetchUrl": "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit2/notebooks/nb2"
                         }, {
                             "id" : "nb3",
                             "commitId" : "commit2",
@@ -265,13 +296,6 @@ class BlueprintServiceTest {
                             "commitId" : "commit2",
                             "path" : "bar/foo",
                             "fetchUrl" : "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit2/notebooks/nb3"
-                          }, {
-                            "inputs" : [ "/c", "/d" ],
-                            "outputs" : [ "/e", "/f" ],
-                            "id" : "nb2",
-                            "commitId" : "commit2",
-                            "path" : "foo/bar",
-                            "fetchUrl" : "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit2/notebooks/nb2"
                           }, {
                             "inputs" : [ "/a", "/b" ],
                             "outputs" : [ "/c", "/d" ],
@@ -279,6 +303,13 @@ class BlueprintServiceTest {
                             "commitId" : "commit2",
                             "path" : "foo",
                             "fetchUrl" : "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit2/notebooks/nb1"
+                          }, {
+                            "inputs" : [ "/c", "/d" ],
+                            "outputs" : [ "/e", "/f" ],
+                            "id" : "nb2",
+                            "commitId" : "commit2",
+                            "path" : "foo/bar",
+                            "fetchUrl" : "/api/v1/repositories/17cdeaefa5cc6022481c824e15a47a7726f593dd/commits/commit2/notebooks/nb2"
                           } ],
                           "edges" : [ {
                             "from" : "nb2",
@@ -298,4 +329,466 @@ class BlueprintServiceTest {
                 .extracting(WebClientResponse::status)
                 .isEqualTo(Http.Status.NOT_ACCEPTABLE_406);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testConditionalRequests() {
+
+        var repository = new Repository("foo/bar/conditional");
+        var commit = new Commit("conditionalCommit");
+        commit.setAuthorName("Hadrien");
+        commit.setAuthoredAt(Instant.ofEpochMilli(0));
+        var nb1 = new Notebook("conditionalNb1");
+        nb1.addInputs(new Dataset("/a"));
+        commit.addCreate("foo", nb1);
+        notebookStore.saveCommit(repository, commit);
+
+        var path = "/api/v1/repositories/" + repository.getId() + "/commits/" + commit.getId() + "/notebooks";
+        var response = client.get().path(path).accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        var first = response.await();
+        assertThat(first)
+                .hasStatus(Http.Status.OK_200)
+                .hasHeader(Http.Header.CACHE_CONTROL, ImmutableResourceHandler.CACHE_CONTROL);
+        var etag = first.headers().first(Http.Header.ETAG).orElseThrow();
+
+        // Another media type is another representation.
+        response = client.get().path(path).accept(BlueprintService.APPLICATION_NOTEBOOK_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await().headers().first(Http.Header.ETAG)).isPresent().isNotEqualTo(Optional.of(etag));
+
+        // Any representation of a parsed commit.
+        response = client.get().path(path).accept(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    headers.add(Http.Header.IF_NONE_MATCH, "*");
+                    return headers;
+                }).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.NOT_MODIFIED_304)
+                .hasHeader(Http.Header.ETAG, etag);
+
+        // Answered without the database.
+        notebookStore.purgeDatabase();
+        response = client.get().path(path).accept(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    headers.add(Http.Header.IF_NONE_MATCH, etag);
+                    return headers;
+                }).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.NOT_MODIFIED_304)
+                .hasHeader(Http.Header.ETAG, etag);
+
+        // Missing commits are not cacheable, and do not match any representation.
+        response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits/doesNotExist")
+                .accept(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    headers.add(Http.Header.IF_NONE_MATCH, "*");
+                    return headers;
+                }).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.NOT_FOUND_404)
+                .doesNotHaveHeader(Http.Header.ETAG)
+                .doesNotHaveHeader(Http.Header.CACHE_CONTROL);
+    }
+
+    @Test
+    void testDependencies() {
+
+        var repository = new Repository("foo/bar/dependencies");
+        var commit = new Commit("dependenciesCommit");
+        var nb1 = new Notebook("nb1");
+        nb1.addInputs(new Dataset("/a"));
+        nb1.addOutputs(new Dataset("/b"));
+        var nb2 = new Notebook("nb2");
+        nb2.addInputs(new Dataset("/b"));
+        nb2.addOutputs(new Dataset("/c"));
+        var nb3 = new Notebook("nb3");
+        nb3.addInputs(new Dataset("/x"));
+        commit.addCreate("one", nb1);
+        commit.addCreate("two", nb2);
+        commit.addCreate("three", nb3);
+        notebookStore.saveCommit(repository, commit);
+
+        var path = "/api/v1/repositories/" + repository.getId() + "/commits/" + commit.getId() + "/notebooks/";
+        var response = client.get().path(path + "nb1/forward").accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .hasJsonContent("""
+                        {
+                          "nodes" : [ {
+                            "inputs" : [ "/a" ],
+                            "outputs" : [ "/b" ],
+                            "id" : "nb1",
+                            "commitId" : "dependenciesCommit",
+                            "path" : "one",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/dependenciesCommit/notebooks/nb1"
+                          }, {
+                            "inputs" : [ "/b" ],
+                            "outputs" : [ "/c" ],
+                            "id" : "nb2",
+                            "commitId" : "dependenciesCommit",
+                            "path" : "two",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/dependenciesCommit/notebooks/nb2"
+                          } ],
+                          "edges" : [ {
+                            "from" : "nb1",
+                            "to" : "nb2"
+                          } ]
+                        }
+                        """.formatted(repository.getId()));
+
+        // Notebooks without dependencies are returned alone.
+        response = client.get().path(path + "nb3/backward").accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await()).hasStatus(Http.Status.OK_200);
+
+        response = client.get().path(path + "unknown/backward").accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await()).hasStatus(Http.Status.NOT_FOUND_404);
+    }
+
+    @Test
+    void testReachability() {
+
+        var repository = new Repository("foo/bar/reachability");
+        var commit = new Commit("reachabilityCommit");
+        var nb1 = new Notebook("nb1");
+        nb1.addInputs(new Dataset("/a"));
+        nb1.addOutputs(new Dataset("/b"));
+        var nb2 = new Notebook("nb2");
+        nb2.addInputs(new Dataset("/b"));
+        nb2.addOutputs(new Dataset("/c"));
+        var nb3 = new Notebook("nb3");
+        nb3.addInputs(new Dataset("/x"));
+        commit.addCreate("one", nb1);
+        commit.addCreate("two", nb2);
+        commit.addCreate("three", nb3);
+        notebookStore.saveCommit(repository, commit);
+
+        var path = "/api/v1/repositories/" + repository.getId() + "/commits/" + commit.getId() + "/reachability";
+        var response = client.post().path(path)
+                .accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON)
+                .submit("""
+                        { "datasets" : [ "/a", "/x", "/unknown" ], "notebooks" : [ "nb2" ] }
+                        """);
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .hasJsonContent("""
+                        {
+                          "datasets" : {
+                            "/a" : [ "nb1", "nb2" ],
+                            "/x" : [ "nb3" ],
+                            "/unknown" : [ ]
+                          },
+                          "notebooks" : {
+                            "nb2" : [ "nb2" ]
+                          },
+                          "affected" : [ "nb1", "nb3", "nb2" ]
+                        }
+                        """);
+
+        response = client.post().path(path)
+                .accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON)
+                .submit("""
+                        { "direction" : "upstream", "notebooks" : [ "nb2" ], "targets" : [ "nb1" ] }
+                        """);
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .hasJsonContent("""
+                        {
+                          "datasets" : { },
+                          "notebooks" : {
+                            "nb2" : [ "nb1" ]
+                          },
+                          "affected" : [ "nb1" ]
+                        }
+                        """);
+
+        // A null direction is downstream, like a missing one.
+        response = client.post().path(path)
+                .accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON)
+                .submit("""
+                        { "direction" : null, "notebooks" : [ "nb1" ] }
+                        """);
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .hasJsonContent("""
+                        {
+                          "datasets" : { },
+                          "notebooks" : {
+                            "nb1" : [ "nb1", "nb2" ]
+                          },
+                          "affected" : [ "nb1", "nb2" ]
+                        }
+                        """);
+
+        response = client.post().path("/api/v1/repositories/" + repository.getId() + "/commits/unknown/reachability")
+                .accept(MediaType.APPLICATION_JSON).contentType(MediaType.APPLICATION_JSON)
+                .submit("{}");
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await()).hasStatus(Http.Status.NOT_FOUND_404);
+    }
+
+    @Test
+    void testPlan() {
+
+        var repository = new Repository("foo/bar/plan");
+        var commit = new Commit("planCommit");
+        var nb1 = new Notebook("nb1");
+        nb1.addInputs(new Dataset("/a"));
+        nb1.addOutputs(new Dataset("/b"));
+        var nb2 = new Notebook("nb2");
+        nb2.addInputs(new Dataset("/b"));
+        nb2.addOutputs(new Dataset("/c"));
+        var nb3 = new Notebook("nb3");
+        nb3.addInputs(new Dataset("/x"));
+        commit.addCreate("one", nb1);
+        commit.addCreate("two", nb2);
+        commit.addCreate("three", nb3);
+        notebookStore.saveCommit(repository, commit);
+
+        var response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits/" + commit.getId() + "/plan")
+                .accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .hasJsonContent("""
+                        {
+                          "depth" : 2,
+                          "width" : 2,
+                          "levels" : [ [ {
+                            "id" : "nb1",
+                            "commitId" : "planCommit",
+                            "path" : "one",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/planCommit/notebooks/nb1"
+                          }, {
+                            "id" : "nb3",
+                            "commitId" : "planCommit",
+                            "path" : "three",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/planCommit/notebooks/nb3"
+                          } ], [ {
+                            "id" : "nb2",
+                            "commitId" : "planCommit",
+                            "path" : "two",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/planCommit/notebooks/nb2"
+                          } ] ],
+                          "criticalPath" : [ {
+                            "id" : "nb1",
+                            "commitId" : "planCommit",
+                            "path" : "one",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/planCommit/notebooks/nb1"
+                          }, {
+                            "id" : "nb2",
+                            "commitId" : "planCommit",
+                            "path" : "two",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/planCommit/notebooks/nb2"
+                          } ]
+                        }
+                        """.formatted(repository.getId()));
+
+        // Notebooks that depend on each other cannot be planned.
+        var cyclic = new Commit("cyclicCommit");
+        var nb4 = new Notebook("nb4");
+        nb4.addInputs(new Dataset("/c"));
+        nb4.addOutputs(new Dataset("/a"));
+        cyclic.addCreate("one", nb1);
+        cyclic.addCreate("two", nb2);
+        cyclic.addCreate("four", nb4);
+        notebookStore.saveCommit(repository, cyclic);
+
+        response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits/" + cyclic.getId() + "/plan")
+                .accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.CONFLICT_409)
+                .doesNotHaveHeader(Http.Header.ETAG);
+    }
+
+    @Test
+    void testRerunPlan() {
+
+        var repository = new Repository("foo/bar/rerun");
+        var commit = new Commit("rerunCommit");
+        var nb1 = new Notebook("nb1");
+        nb1.addInputs(new Dataset("/a"));
+        nb1.addOutputs(new Dataset("/b"));
+        var nb2 = new Notebook("nb2");
+        nb2.addInputs(new Dataset("/b"));
+        nb2.addOutputs(new Dataset("/c"));
+        var nb3 = new Notebook("nb3");
+        nb3.addInputs(new Dataset("/c"));
+        var nb4 = new Notebook("nb4");
+        nb4.addInputs(new Dataset("/x"));
+        var nb5 = new Notebook("nb5");
+        nb5.addInputs(new Dataset("/old"));
+        var nb6 = new Notebook("nb6");
+        nb6.addOutputs(new Dataset("/old"));
+        commit.addUnchanged("one", nb1);
+        commit.addUpdate("two", nb2);
+        commit.addUnchanged("three", nb3);
+        commit.addUnchanged("four", nb4);
+        commit.addUnchanged("five", nb5);
+        commit.addDelete("six", nb6);
+        notebookStore.saveCommit(repository, commit);
+
+        // nb2 changed, nb5 lost its input and nb3 is downstream of nb2.
+        var response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits/" + commit.getId() + "/rerun")
+                .accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .hasJsonContent("""
+                        {
+                          "depth" : 2,
+                          "width" : 2,
+                          "levels" : [ [ {
+                            "id" : "nb5",
+                            "commitId" : "rerunCommit",
+                            "path" : "five",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/rerunCommit/notebooks/nb5"
+                          }, {
+                            "id" : "nb2",
+                            "commitId" : "rerunCommit",
+                            "path" : "two",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/rerunCommit/notebooks/nb2"
+                          } ], [ {
+                            "id" : "nb3",
+                            "commitId" : "rerunCommit",
+                            "path" : "three",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/rerunCommit/notebooks/nb3"
+                          } ] ],
+                          "criticalPath" : [ {
+                            "id" : "nb2",
+                            "commitId" : "rerunCommit",
+                            "path" : "two",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/rerunCommit/notebooks/nb2"
+                          }, {
+                            "id" : "nb3",
+                            "commitId" : "rerunCommit",
+                            "path" : "three",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/rerunCommit/notebooks/nb3"
+                          } ]
+                        }
+                        """.formatted(repository.getId()));
+    }
+
+    @Test
+    void testRerunPlanWhenOutputsAreRenamed() {
+
+        var repository = new Repository("foo/bar/renamed");
+        var parent = new Commit("renamedParent");
+        var before = new Notebook("before");
+        before.addOutputs(new Dataset("/kept"), new Dataset("/old"));
+        var keptConsumer = new Notebook("keptConsumer");
+        keptConsumer.addInputs(new Dataset("/kept"));
+        var oldConsumer = new Notebook("oldConsumer");
+        oldConsumer.addInputs(new Dataset("/old"));
+        var other = new Notebook("other");
+        other.addInputs(new Dataset("/other"));
+        parent.addCreate("one", before);
+        parent.addCreate("two", keptConsumer);
+        parent.addCreate("three", oldConsumer);
+        parent.addCreate("four", other);
+
+        // The notebook now produces /new instead of /old.
+        var commit = new Commit("renamedCommit");
+        var after = new Notebook("after");
+        after.addOutputs(new Dataset("/kept"), new Dataset("/new"));
+        commit.addUpdate("one", after, before.getBlobId());
+        commit.addUnchanged("two", keptConsumer);
+        commit.addUnchanged("three", oldConsumer);
+        commit.addUnchanged("four", other);
+        notebookStore.saveCommit(repository, commit);
+
+        // What the previous version produced is not known until the parent is parsed.
+        var response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits/" + commit.getId() + "/rerun")
+                .accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .doesNotHaveHeader(Http.Header.ETAG);
+        assertThat(response.await().content().as(String.class).await(1, TimeUnit.SECONDS))
+                .contains("keptConsumer")
+                .doesNotContain("oldConsumer");
+
+        notebookStore.saveCommit(repository, parent);
+
+        response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits/" + commit.getId() + "/rerun")
+                .accept(MediaType.APPLICATION_JSON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .doesNotHaveHeader(Http.Header.ETAG)
+                .hasJsonContent("""
+                        {
+                          "depth" : 2,
+                          "width" : 2,
+                          "levels" : [ [ {
+                            "id" : "after",
+                            "commitId" : "renamedCommit",
+                            "path" : "one",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/renamedCommit/notebooks/after"
+                          }, {
+                            "id" : "oldConsumer",
+                            "commitId" : "renamedCommit",
+                            "path" : "three",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/renamedCommit/notebooks/oldConsumer"
+                          } ], [ {
+                            "id" : "keptConsumer",
+                            "commitId" : "renamedCommit",
+                            "path" : "two",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/renamedCommit/notebooks/keptConsumer"
+                          } ] ],
+                          "criticalPath" : [ {
+                            "id" : "after",
+                            "commitId" : "renamedCommit",
+                            "path" : "one",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/renamedCommit/notebooks/after"
+                          }, {
+                            "id" : "keptConsumer",
+                            "commitId" : "renamedCommit",
+                            "path" : "two",
+                            "fetchUrl" : "/api/v1/repositories/%1$s/commits/renamedCommit/notebooks/keptConsumer"
+                          } ]
+                        }
+                        """.formatted(repository.getId()));
+    }
+
+    @Test
+    void testAirflowDag() {
+
+        var repository = new Repository("foo/bar/airflow");
+        var commit = new Commit("airflowCommit");
+        var nb1 = new Notebook("nb1");
+        nb1.addInputs(new Dataset("/a"));
+        nb1.addOutputs(new Dataset("/b"));
+        var nb2 = new Notebook("nb2");
+        nb2.addInputs(new Dataset("/b"));
+        commit.addCreate("one.ipynb", nb1);
+        commit.addCreate("two.ipynb", nb2);
+        notebookStore.saveCommit(repository, commit);
+
+        var response = client.get()
+                .path("/api/v1/repositories/" + repository.getId() + "/commits/" + commit.getId() + "/notebooks")
+                .accept(BlueprintService.TEXT_AIRFLOW_PYTHON).submit();
+        assertThat(response).succeedsWithin(1, TimeUnit.SECONDS);
+        assertThat(response.await())
+                .hasStatus(Http.Status.OK_200)
+                .hasHeader(Http.Header.CONTENT_TYPE, BlueprintService.TEXT_AIRFLOW_PYTHON.toString());
+        assertThat(response.await().content().as(String.class).await(1, TimeUnit.SECONDS))
+                .contains("'blueprint_" + repository.getId() + "'")
+                .contains("task_nb1 >> task_nb2");
+    }
+}
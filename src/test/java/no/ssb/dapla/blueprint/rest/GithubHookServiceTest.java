@@ -12,12 +12,12 @@ import no.ssb.dapla.blueprint.neo4j.model.Notebook;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.neo4j.ogm.config.Configuration;
-import org.neo4j.ogm.session.Session;
 import org.neo4j.ogm.session.SessionFactory;
 
 import java.io.File;
@@ -25,8 +25,11 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.stream.Stream;
@@ -43,7 +46,7 @@ class GithubHookServiceTest {
 
     private static NotebookStore store;
     private static GithubHookService handler;
-    private static Session session;
+    private static GithubHookService parallelHandler;
 
     private final List<Path> tmpDirList = new ArrayList<>();
 
@@ -70,27 +73,31 @@ class GithubHookServiceTest {
 
     @BeforeEach
     void setUp() {
-        session.purgeDatabase();
-        session.clear();
+        store.purgeDatabase();
     }
 
     @BeforeAll
     static void beforeAll(SessionFactory factory, Config config) throws NoSuchAlgorithmException {
         if (factory == null) {
-            var sessionFactory = new SessionFactory(
+            factory = new SessionFactory(
                     new Configuration.Builder()
                             .uri("bolt://0.0.0.0:7687")
                             .credentials("neo4j", "password")
                             .build(),
                     Commit.class.getPackageName()
             );
-            session = sessionFactory.openSession();
-        } else {
-            session = factory.openSession();
         }
 
-        store = new NotebookStore(session);
+        store = new NotebookStore(factory);
+        store.createSchema();
         handler = new GithubHookService(store, new GitStore(config), new GithubHookVerifier(config));
+        parallelHandler = new GithubHookService(store, new GitStore(config), new GithubHookVerifier(config), 4);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        handler.shutdown();
+        parallelHandler.shutdown();
     }
 
     @AfterEach
@@ -154,6 +161,27 @@ class GithubHookServiceTest {
 
     }
 
+    @Test
+    void testHookInParallel() throws Exception {
+        int repoCounter = 0;
+        Git remoteRepo = createRemoteRepo(repoCounter);
+        JsonNode payloadInitialCommit = commitToRemote("Initial commit", remoteRepo, repoCounter);
+        String firstCommitId = payloadInitialCommit.get("head_commit").get("id").textValue();
+        parallelHandler.checkoutAndParse(payloadInitialCommit);
+
+        Commit firstCommit = store.getCommit(firstCommitId);
+        assertThat(firstCommit.getCreates()).hasSize(4);
+        assertThat(firstCommit.getUnchanged()).isEmpty();
+
+        duplicateFileInRepo(resolveRepoDir(remoteRepo.getRepository().getDirectory().getPath(), repoCounter), repoCounter);
+        JsonNode secondPayload = commitToRemote("Second commit from remote repository", remoteRepo, repoCounter);
+        parallelHandler.checkoutAndParse(secondPayload);
+
+        Commit secondCommit = store.getCommit(secondPayload.get("head_commit").get("id").textValue());
+        assertThat(secondCommit.getCreates()).hasSize(1);
+        assertThat(secondCommit.getUnchanged()).hasSize(4);
+    }
+
     @Test
     void testNotLatestCommit() throws Exception {
         int repoNumber = 0;
@@ -178,6 +206,50 @@ class GithubHookServiceTest {
         assertThat(commit.getUnchanged()).hasSize(4);
     }
 
+    @Test
+    void testIncrementalFromAncestor() throws Exception {
+        int repoCounter = 0;
+        Git remoteRepo = createRemoteRepo(repoCounter);
+        handler.checkoutAndParse(commitToRemote("Initial commit", remoteRepo, repoCounter));
+
+        // The second commit is never parsed, the third one is parsed from the first one.
+        String repoDir = resolveRepoDir(remoteRepo.getRepository().getDirectory().getPath(), repoCounter);
+        createNewFileInRepo(repoDir, 0);
+        commitToRemote("Second commit", remoteRepo, repoCounter);
+        createNewFileInRepo(repoDir, 1);
+        JsonNode thirdPayload = commitToRemote("Third commit", remoteRepo, repoCounter);
+        handler.checkoutAndParse(thirdPayload);
+
+        Commit thirdCommit = store.getCommit(thirdPayload.get("head_commit").get("id").textValue());
+        assertThat(thirdCommit.getCreates()).extracting(file -> file.getPath().toString())
+                .containsExactly(NOTEBOOK_NAME + NOTEBOOK_FILE_EXTENSION + "_1" + NOTEBOOK_FILE_EXTENSION);
+        assertThat(thirdCommit.getUpdates()).isEmpty();
+        assertThat(thirdCommit.getUnchanged()).hasSize(5);
+    }
+
+    @Test
+    void testCommitterInformation() throws Exception {
+        int repoCounter = 0;
+        Git remoteRepo = createRemoteRepo(repoCounter);
+        remoteRepo.add().addFilepattern(".").call();
+        // A rebased commit: authored before it was committed, by someone else.
+        RevCommit revision = remoteRepo.commit().setMessage("Rebased commit")
+                .setAuthor(new PersonIdent("Author", "author@ssb.no",
+                        Date.from(Instant.ofEpochSecond(1000)), TimeZone.getTimeZone("UTC")))
+                .setCommitter(new PersonIdent("Committer", "committer@ssb.no",
+                        Date.from(Instant.ofEpochSecond(2000)), TimeZone.getTimeZone("UTC")))
+                .call();
+        handler.checkoutAndParse(toPayload(revision, remoteRepo, repoCounter));
+
+        Commit commit = store.getCommit(revision.getName());
+        assertThat(commit.getAuthorName()).isEqualTo("Author");
+        assertThat(commit.getAuthorEmail()).isEqualTo("author@ssb.no");
+        assertThat(commit.getAuthoredAt()).isEqualTo(Instant.ofEpochSecond(1000));
+        assertThat(commit.getCommitterName()).isEqualTo("Committer");
+        assertThat(commit.getCommitterEmail()).isEqualTo("committer@ssb.no");
+        assertThat(commit.getCommittedAt()).isEqualTo(Instant.ofEpochSecond(2000));
+    }
+
     /**
      * TODO: Async tests need to be fixed. The order in which the commits are processed seem to change the amount
      * of notebooks. Not sure why, but I think it has something to do with the file being the same. checkoutAndParse
@@ -295,22 +367,26 @@ class GithubHookServiceTest {
     }
 
     private JsonNode commitToRemote(String commitMessage, Git remoteRepo, int repoCounter) {
-        ObjectNode newPayload = new ObjectMapper().createObjectNode();
         try {
             remoteRepo.add().addFilepattern(".").call();
             RevCommit commitRevision = remoteRepo.commit().setMessage(commitMessage).call();
-
-            newPayload.put("after", commitRevision.getName());
-            ObjectNode commitNode = newPayload.putObject("head_commit");
-            commitNode.put("id", commitRevision.getName());
-            ObjectNode repoNode = newPayload.putObject("repository");
-            repoNode
-                    .put("clone_url", resolveRepoDir(remoteRepo.getRepository().getDirectory().getPath(), repoCounter)
-                            + File.separator + ".git")
-                    .put("name", REMOTE_REPO_BASE_NAME + repoCounter);
+            return toPayload(commitRevision, remoteRepo, repoCounter);
         } catch (GitAPIException e) {
             e.printStackTrace();
         }
+        return new ObjectMapper().createObjectNode();
+    }
+
+    private JsonNode toPayload(RevCommit commitRevision, Git remoteRepo, int repoCounter) {
+        ObjectNode newPayload = new ObjectMapper().createObjectNode();
+        newPayload.put("after", commitRevision.getName());
+        ObjectNode commitNode = newPayload.putObject("head_commit");
+        commitNode.put("id", commitRevision.getName());
+        ObjectNode repoNode = newPayload.putObject("repository");
+        repoNode
+                .put("clone_url", resolveRepoDir(remoteRepo.getRepository().getDirectory().getPath(), repoCounter)
+                        + File.separator + ".git")
+                .put("name", REMOTE_REPO_BASE_NAME + repoCounter);
         return newPayload;
     }
 
@@ -0,0 +1,43 @@
+package no.ssb.dapla.blueprint.rest;
+
+import io.helidon.common.http.MediaType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImmutableResourceHandlerTest {
+
+    @Test
+    void testETagDependsOnPathCommitAndMediaType() {
+        var etag = ImmutableResourceHandler.computeETag("/path", "commit", MediaType.APPLICATION_JSON);
+        assertThat(etag).startsWith("\"").endsWith("\"");
+        assertThat(ImmutableResourceHandler.computeETag("/path", "commit", MediaType.APPLICATION_JSON))
+                .isEqualTo(etag);
+        assertThat(ImmutableResourceHandler.computeETag("/other", "commit", MediaType.APPLICATION_JSON))
+                .isNotEqualTo(etag);
+        assertThat(ImmutableResourceHandler.computeETag("/path", "other", MediaType.APPLICATION_JSON))
+                .isNotEqualTo(etag);
+        assertThat(ImmutableResourceHandler.computeETag("/path", "commit", BlueprintService.APPLICATION_DAG_JSON))
+                .isNotEqualTo(etag);
+    }
+
+    @Test
+    void testMatches() {
+        assertThat(ImmutableResourceHandler.matches(List.of(), "\"a\"")).isFalse();
+        assertThat(ImmutableResourceHandler.matches(List.of("\"a\""), "\"a\"")).isTrue();
+        assertThat(ImmutableResourceHandler.matches(List.of("W/\"a\""), "\"a\"")).isTrue();
+        assertThat(ImmutableResourceHandler.matches(List.of("\"b\", \"a\""), "\"a\"")).isTrue();
+        assertThat(ImmutableResourceHandler.matches(List.of("\"b\"", "\"c\""), "\"a\"")).isFalse();
+        assertThat(ImmutableResourceHandler.matches(List.of("*"), "\"a\"")).isFalse();
+    }
+
+    @Test
+    void testMatchesAny() {
+        assertThat(ImmutableResourceHandler.matchesAny(List.of())).isFalse();
+        assertThat(ImmutableResourceHandler.matchesAny(List.of("*"))).isTrue();
+        assertThat(ImmutableResourceHandler.matchesAny(List.of(" * "))).isTrue();
+        assertThat(ImmutableResourceHandler.matchesAny(List.of("\"*\""))).isFalse();
+    }
+}
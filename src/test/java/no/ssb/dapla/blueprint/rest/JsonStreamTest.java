@@ -0,0 +1,127 @@
+package no.ssb.dapla.blueprint.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.helidon.common.http.DataChunk;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonStreamTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static JsonStream createArray(List<?> values) {
+        return JsonStream.create(MAPPER.getFactory(),
+                Stream.of(JsonStream.part(JsonGenerator::writeStartArray)),
+                values.stream().map(value -> generator -> generator.writeObject(value)),
+                Stream.of(JsonStream.part(JsonGenerator::writeEndArray))
+        );
+    }
+
+    @Test
+    void testWritesTheParts() throws Exception {
+        List<Map<String, Object>> values = List.of(Map.of("id", 1), Map.of("id", "two"));
+
+        var subscriber = new ChunkSubscriber();
+        createArray(values).subscribe(subscriber);
+
+        assertThat(subscriber.completed).isTrue();
+        assertThat(subscriber.error).isNull();
+        assertThat(subscriber.chunks).isEqualTo(1);
+        assertThat(MAPPER.readTree(subscriber.content.toByteArray())).isEqualTo(MAPPER.valueToTree(values));
+    }
+
+    @Test
+    void testSendsLargeDocumentsInChunks() throws Exception {
+        List<String> values = IntStream.range(0, 10_000).mapToObj(i -> "notebook-" + i)
+                .collect(Collectors.toList());
+
+        var subscriber = new ChunkSubscriber();
+        createArray(values).subscribe(subscriber);
+
+        assertThat(subscriber.completed).isTrue();
+        assertThat(subscriber.chunks).isGreaterThan(1);
+        assertThat(subscriber.largestChunk).isLessThan(JsonStream.CHUNK_SIZE * 2);
+        assertThat(MAPPER.readTree(subscriber.content.toByteArray())).isEqualTo(MAPPER.valueToTree(values));
+    }
+
+    @Test
+    void testEmpty() throws Exception {
+        var subscriber = new ChunkSubscriber();
+        createArray(List.of()).subscribe(subscriber);
+
+        assertThat(subscriber.completed).isTrue();
+        assertThat(MAPPER.readTree(subscriber.content.toByteArray())).isEqualTo(MAPPER.createArrayNode());
+    }
+
+    @Test
+    void testFailsSecondSubscription() {
+        var stream = createArray(List.of("a"));
+        stream.subscribe(new ChunkSubscriber());
+
+        var second = new ChunkSubscriber();
+        stream.subscribe(second);
+        assertThat(second.error).isInstanceOf(IllegalStateException.class);
+        assertThat(second.chunks).isZero();
+    }
+
+    @Test
+    void testPropagatesErrors() {
+        var stream = JsonStream.create(MAPPER.getFactory(), Stream.of(JsonStream.part(generator -> {
+            throw new IllegalStateException("failed");
+        })));
+
+        var subscriber = new ChunkSubscriber();
+        stream.subscribe(subscriber);
+        assertThat(subscriber.error).hasMessage("failed");
+        assertThat(subscriber.completed).isFalse();
+    }
+
+    /**
+     * Requests one chunk at a time, from onNext.
+     */
+    private static final class ChunkSubscriber implements Flow.Subscriber<DataChunk> {
+
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private Flow.Subscription subscription;
+        private int chunks;
+        private int largestChunk;
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(DataChunk chunk) {
+            byte[] bytes = chunk.bytes();
+            content.writeBytes(bytes);
+            largestChunk = Math.max(largestChunk, bytes.length);
+            chunks++;
+            chunk.release();
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}